@@ -0,0 +1,140 @@
+package io.whitecloud.benchmark;
+
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import io.whitecloud.impl.PersistentBTree;
+import io.whitecloud.impl.PersistentRedBlackTree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Wide-node B-tree versus the red-black tree on the same random elements: lookups, single path copies
+ * of add and delete, and the heap retained per element, which the footprint benchmarks report as
+ * {@code bytesPerElement} next to the time of building the tree.
+ * Both trees hold the even numbers {@code 0, 2, ..., 2 * (size - 1)}, inserted in random order.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Benchmark)
+public class BTreeBenchmark {
+    private static final int PROBES = 1 << 16;
+
+    @Param({"1000", "1000000"})
+    public int size;
+
+    @Param({"16", "32"})
+    public int maxKeys;
+
+    private Integer[] elements;
+    private PersistentRedBlackTree<Integer> redBlack;
+    private PersistentBTree<Integer> bTree;
+    private Integer[] present;
+    private Integer[] missing;
+    private int probe;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        elements = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            elements[i] = 2 * i;
+        }
+        for (int i = size - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            Integer tmp = elements[i];
+            elements[i] = elements[j];
+            elements[j] = tmp;
+        }
+
+        redBlack = buildRedBlack();
+        bTree = buildBTree();
+
+        present = new Integer[PROBES];
+        missing = new Integer[PROBES];
+        for (int i = 0; i < PROBES; i++) {
+            int index = random.nextInt(size);
+            present[i] = 2 * index;
+            missing[i] = 2 * index + 1;
+        }
+    }
+
+    private PersistentRedBlackTree<Integer> buildRedBlack() {
+        PersistentRedBlackTree<Integer> tree = new PersistentRedBlackTree<>();
+        for (Integer el : elements) {
+            tree = tree.add(el);
+        }
+        return tree;
+    }
+
+    private PersistentBTree<Integer> buildBTree() {
+        PersistentBTree<Integer> tree = new PersistentBTree<>(Comparator.naturalOrder(), maxKeys);
+        for (Integer el : elements) {
+            tree = tree.add(el);
+        }
+        return tree;
+    }
+
+    @Benchmark
+    public boolean redBlackContains() {
+        return redBlack.contains(present[probe++ & (PROBES - 1)]);
+    }
+
+    @Benchmark
+    public boolean bTreeContains() {
+        return bTree.contains(present[probe++ & (PROBES - 1)]);
+    }
+
+    @Benchmark
+    public PersistentRedBlackTree<Integer> redBlackAdd() {
+        return redBlack.add(missing[probe++ & (PROBES - 1)]);
+    }
+
+    @Benchmark
+    public PersistentBTree<Integer> bTreeAdd() {
+        return bTree.add(missing[probe++ & (PROBES - 1)]);
+    }
+
+    @Benchmark
+    public PersistentRedBlackTree<Integer> redBlackDelete() {
+        return redBlack.delete(present[probe++ & (PROBES - 1)]);
+    }
+
+    @Benchmark
+    public PersistentBTree<Integer> bTreeDelete() {
+        return bTree.delete(present[probe++ & (PROBES - 1)]);
+    }
+
+    /**
+     * The elements are not counted, they are shared with the other tree and the state.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 1)
+    @Measurement(iterations = 1)
+    public PersistentRedBlackTree<Integer> redBlackFootprint(Footprint footprint) {
+        return footprint.measure(size, this::buildRedBlack);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 1)
+    @Measurement(iterations = 1)
+    public PersistentBTree<Integer> bTreeFootprint(Footprint footprint) {
+        return footprint.measure(size, this::buildBTree);
+    }
+}
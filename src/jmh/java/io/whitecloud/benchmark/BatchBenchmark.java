@@ -0,0 +1,57 @@
+package io.whitecloud.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import io.whitecloud.impl.PersistentRedBlackTree;
+import io.whitecloud.impl.TransientRedBlackTree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Applying a batch of adds followed by deletes of the same keys when only the final version is kept:
+ * a persistent version per change versus one transient editor.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Thread)
+public class BatchBenchmark {
+    @Param({"10000"})
+    public int batch;
+
+    @Benchmark
+    public PersistentRedBlackTree<Integer> persistent(TreeState state) {
+        PersistentRedBlackTree<Integer> tree = state.tree;
+        for (int i = 0; i < batch; i++) {
+            PersistentRedBlackTree<Integer> next = tree.add(state.missing[i & TreeState.mask()]);
+            tree = next == null ? tree : next;
+        }
+        for (int i = 0; i < batch; i++) {
+            PersistentRedBlackTree<Integer> next = tree.delete(state.missing[i & TreeState.mask()]);
+            tree = next == null ? tree : next;
+        }
+        return tree;
+    }
+
+    @Benchmark
+    public PersistentRedBlackTree<Integer> transientEditor(TreeState state) {
+        TransientRedBlackTree<Integer> editor = state.tree.asTransient();
+        for (int i = 0; i < batch; i++) {
+            editor.add(state.missing[i & TreeState.mask()]);
+        }
+        for (int i = 0; i < batch; i++) {
+            editor.delete(state.missing[i & TreeState.mask()]);
+        }
+        return editor.toPersistent();
+    }
+}
@@ -0,0 +1,55 @@
+package io.whitecloud.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import io.whitecloud.impl.PersistentRedBlackTree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Loading sorted elements into an empty tree: repeated add versus bulk construction.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Benchmark)
+public class BuildBenchmark {
+    @Param({"1000", "100000", "1000000"})
+    public int size;
+
+    private Integer[] sorted;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        sorted = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            sorted[i] = i;
+        }
+    }
+
+    @Benchmark
+    public PersistentRedBlackTree<Integer> addLoop() {
+        PersistentRedBlackTree<Integer> tree = new PersistentRedBlackTree<>();
+        for (Integer el : sorted) {
+            tree = tree.add(el);
+        }
+        return tree;
+    }
+
+    @Benchmark
+    public PersistentRedBlackTree<Integer> fromSorted() {
+        return PersistentRedBlackTree.fromSorted(sorted);
+    }
+}
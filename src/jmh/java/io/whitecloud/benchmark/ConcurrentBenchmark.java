@@ -0,0 +1,127 @@
+package io.whitecloud.benchmark;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import io.whitecloud.impl.AtomicRedBlackTree;
+import io.whitecloud.impl.CombiningRedBlackTree;
+import io.whitecloud.impl.PersistentRedBlackTree;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Writers sharing one tree: compare-and-set of the root in {@link AtomicRedBlackTree}, batches of
+ * {@link CombiningRedBlackTree} and a synchronized block around the reference.
+ * Every write adds or deletes a random element of a range twice the initial size, so the size stays
+ * about the same. Set the number of threads with {@code -t}; contention counters of the atomic and
+ * combining trees are reported as secondary results of every benchmark.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@Threads(4)
+@State(Scope.Benchmark)
+public class ConcurrentBenchmark {
+    @Param({"1000", "1000000"})
+    public int size;
+
+    private AtomicRedBlackTree<Integer> atomic;
+    private CombiningRedBlackTree<Integer> combining;
+    private PersistentRedBlackTree<Integer> locked;
+    private final Object lock = new Object();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        PersistentRedBlackTree<Integer> initial = new PersistentRedBlackTree<>();
+        for (int i = 0; i < 2 * size; i += 2) {
+            initial = initial.add(i);
+        }
+        atomic = new AtomicRedBlackTree<>(initial);
+        combining = new CombiningRedBlackTree<>(new AtomicRedBlackTree<>(initial));
+        locked = initial;
+    }
+
+    /**
+     * Counters of the shared trees during an iteration. They are collected once, by the first thread
+     * to finish the iteration, so the sum over the threads is the total.
+     */
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Contention {
+        public long retries;
+        public long failedCas;
+        public long batches;
+        public long combinedOperations;
+
+        @Setup(Level.Iteration)
+        public void clear() {
+            retries = 0;
+            failedCas = 0;
+            batches = 0;
+            combinedOperations = 0;
+        }
+
+        @TearDown(Level.Iteration)
+        public void collect(ConcurrentBenchmark benchmark) {
+            synchronized (benchmark) {
+                AtomicRedBlackTree.ContentionStats atomicStats = benchmark.atomic.stats();
+                benchmark.atomic.resetStats();
+                CombiningRedBlackTree.CombiningStats combiningStats = benchmark.combining.stats();
+                benchmark.combining.resetStats();
+                retries = atomicStats.retries();
+                failedCas = atomicStats.failedCas();
+                batches = combiningStats.batches();
+                combinedOperations = combiningStats.operations();
+            }
+        }
+    }
+
+    @Benchmark
+    public boolean atomicWrite(Contention contention) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Integer el = random.nextInt(2 * size);
+        return random.nextBoolean() ? atomic.add(el) : atomic.delete(el);
+    }
+
+    @Benchmark
+    public boolean combiningWrite(Contention contention) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Integer el = random.nextInt(2 * size);
+        return random.nextBoolean() ? combining.add(el) : combining.delete(el);
+    }
+
+    @Benchmark
+    public boolean synchronizedWrite() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Integer el = random.nextInt(2 * size);
+        boolean add = random.nextBoolean();
+        synchronized (lock) {
+            PersistentRedBlackTree<Integer> changed = add ? locked.add(el) : locked.delete(el);
+            if (changed == null) {
+                return false;
+            }
+            locked = changed;
+            return true;
+        }
+    }
+
+    @Benchmark
+    public boolean atomicRead() {
+        return atomic.contains(ThreadLocalRandom.current().nextInt(2 * size));
+    }
+}
@@ -0,0 +1,85 @@
+package io.whitecloud.benchmark;
+
+import java.util.Iterator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import io.whitecloud.PersistentTree;
+import io.whitecloud.impl.PersistentRedBlackTree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Differences between a tree of {@code size} elements and a version made from it by {@code changes} random
+ * additions and deletions: the diff skipping shared subtrees versus a merge of full in-order iterations.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Benchmark)
+public class DiffBenchmark {
+    @Param({"1000", "1000000"})
+    public int size;
+
+    @Param({"10", "1000"})
+    public int changes;
+
+    private PersistentRedBlackTree<Integer> older;
+    private PersistentRedBlackTree<Integer> newer;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        older = new PersistentRedBlackTree<>();
+        for (int i = 0; i < size; i++) {
+            older = older.add(2 * i);
+        }
+        newer = older;
+        for (int i = 0; i < changes; i++) {
+            int el = random.nextInt(2 * size);
+            PersistentRedBlackTree<Integer> next = el % 2 == 0 ? newer.delete(el) : newer.add(el);
+            newer = next == null ? newer : next;
+        }
+    }
+
+    @Benchmark
+    public void diff(Blackhole blackhole) {
+        older.diff(newer, blackhole::consume, blackhole::consume);
+    }
+
+    @Benchmark
+    public void merge(Blackhole blackhole) {
+        Iterator<Integer> first = older.iterator(PersistentTree.Order.InOrder);
+        Iterator<Integer> second = newer.iterator(PersistentTree.Order.InOrder);
+        Integer a = first.hasNext() ? first.next() : null;
+        Integer b = second.hasNext() ? second.next() : null;
+        while (a != null || b != null) {
+            int comparisonResult = a == null ? 1 : b == null ? -1 : a.compareTo(b);
+            if (comparisonResult <= 0) {
+                if (comparisonResult < 0) {
+                    blackhole.consume(a);
+                }
+                a = first.hasNext() ? first.next() : null;
+            }
+            if (comparisonResult >= 0) {
+                if (comparisonResult > 0) {
+                    blackhole.consume(b);
+                }
+                b = second.hasNext() ? second.next() : null;
+            }
+        }
+    }
+}
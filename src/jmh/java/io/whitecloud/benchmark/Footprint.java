@@ -0,0 +1,54 @@
+package io.whitecloud.benchmark;
+
+import java.lang.ref.Reference;
+import java.util.function.Supplier;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Heap retained by a structure per element, reported as the secondary result {@code bytesPerElement}
+ * of a benchmark that builds the structure with {@link #measure}.
+ * All benchmarks measure it the same way, so their figures can be compared; only large structures
+ * are well above the noise of the measurement.
+ * JMH adds up the counter over the measurement iterations, so such benchmarks run a single one
+ * ({@code Mode.SingleShotTime} with one measurement iteration).
+ */
+@AuxCounters(AuxCounters.Type.EVENTS)
+@State(Scope.Thread)
+public class Footprint {
+    public double bytesPerElement;
+
+    /**
+     * Build the structure and record the heap it retains. Its input must stay reachable during the call.
+     * @param elements number of elements of the structure
+     * @param build builder of the structure
+     * @return the structure
+     */
+    <T> T measure(int elements, Supplier<T> build) {
+        long before = usedMemory();
+        T built = build.get();
+        long after = usedMemory();
+        Reference.reachabilityFence(built);
+        bytesPerElement = (double) (after - before) / elements;
+        return built;
+    }
+
+    /**
+     * Heap in use once collections stop freeing anything, so garbage of the harness itself isn't counted.
+     */
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 10; i++) {
+            System.gc();
+            long next = runtime.totalMemory() - runtime.freeMemory();
+            if (i >= 3 && next >= used) {
+                break;
+            }
+            used = Math.min(used, next);
+        }
+        return used;
+    }
+}
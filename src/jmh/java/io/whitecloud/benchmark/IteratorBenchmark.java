@@ -0,0 +1,86 @@
+package io.whitecloud.benchmark;
+
+import java.util.Iterator;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import io.whitecloud.PersistentTree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Full traversal of a tree of {@link TreeState#size} elements in every supported order.
+ * Score is whole traversals per second; divide by size to get elements per second.
+ * Descending iteration, internal iteration, streams and the {@link TreeSet} baseline don't depend on the order,
+ * so run them with {@code -p order=InOrder}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Thread)
+public class IteratorBenchmark {
+    @Param({"InOrder", "PreOrder", "PostOrder"})
+    public PersistentTree.Order order;
+
+    @Benchmark
+    public void iterate(TreeState state, Blackhole blackhole) {
+        Iterator<Integer> iterator = state.tree.iterator(order);
+        while (iterator.hasNext()) {
+            blackhole.consume(iterator.next());
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class TreeSetState {
+        TreeSet<Integer> set;
+
+        @Setup(Level.Trial)
+        public void setUp(TreeState state) {
+            set = new TreeSet<>();
+            state.tree.forEach(set::add);
+        }
+    }
+
+    @Benchmark
+    public void descending(TreeState state, Blackhole blackhole) {
+        Iterator<Integer> iterator = state.tree.descendingIterator();
+        while (iterator.hasNext()) {
+            blackhole.consume(iterator.next());
+        }
+    }
+
+    @Benchmark
+    public void forEach(TreeState state, Blackhole blackhole) {
+        state.tree.forEach(blackhole::consume);
+    }
+
+    @Benchmark
+    public void treeSet(TreeSetState state, Blackhole blackhole) {
+        for (Integer el : state.set) {
+            blackhole.consume(el);
+        }
+    }
+
+    @Benchmark
+    public long stream(TreeState state) {
+        return state.tree.stream().mapToLong(Integer::longValue).sum();
+    }
+
+    @Benchmark
+    public long parallelStream(TreeState state) {
+        return state.tree.parallelStream().mapToLong(Integer::longValue).sum();
+    }
+}
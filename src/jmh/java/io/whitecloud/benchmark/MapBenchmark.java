@@ -0,0 +1,85 @@
+package io.whitecloud.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import io.whitecloud.impl.PersistentRedBlackMap;
+import io.whitecloud.impl.PersistentRedBlackTree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Key to value lookups and value updates: the map storing both in its nodes
+ * versus a tree of comparable key-value holders.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Benchmark)
+public class MapBenchmark {
+    private static final int PROBES = 1 << 16;
+
+    record Pair(Integer key, String value) implements Comparable<Pair> {
+        @Override
+        public int compareTo(Pair other) {
+            return key.compareTo(other.key);
+        }
+    }
+
+    @Param({"1000", "1000000"})
+    public int size;
+
+    private PersistentRedBlackMap<Integer, String> map;
+    private PersistentRedBlackTree<Pair> pairs;
+    private Integer[] keys;
+    private int probe;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        map = new PersistentRedBlackMap<>();
+        pairs = new PersistentRedBlackTree<>();
+        for (int i = 0; i < size; i++) {
+            map = map.put(i, "v" + i);
+            pairs = pairs.add(new Pair(i, "v" + i));
+        }
+        keys = new Integer[PROBES];
+        for (int i = 0; i < PROBES; i++) {
+            keys[i] = random.nextInt(size);
+        }
+    }
+
+    @Benchmark
+    public String mapGet() {
+        return map.get(keys[probe++ & (PROBES - 1)]);
+    }
+
+    @Benchmark
+    public PersistentRedBlackMap<Integer, String> mapPut() {
+        return map.put(keys[probe++ & (PROBES - 1)], "new");
+    }
+
+    @Benchmark
+    public Pair pairsGet() {
+        Pair probePair = new Pair(keys[probe++ & (PROBES - 1)], null);
+        return pairs.ceiling(probePair);
+    }
+
+    @Benchmark
+    public PersistentRedBlackTree<Pair> pairsPut() {
+        Pair pair = new Pair(keys[probe++ & (PROBES - 1)], "new");
+        return pairs.delete(pair).add(pair);
+    }
+}
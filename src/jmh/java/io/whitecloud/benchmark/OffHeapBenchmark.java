@@ -0,0 +1,84 @@
+package io.whitecloud.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import io.whitecloud.impl.DirectNodeStorage;
+import io.whitecloud.impl.OffHeapRedBlackTree;
+import io.whitecloud.impl.PersistentLongRedBlackTree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Trees of random long keys: nodes in direct memory versus primitive nodes on the heap.
+ * Off-heap add appends to the storage, so its heap allocation is only the new version object.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g", "-XX:MaxDirectMemorySize=8g"})
+@State(Scope.Benchmark)
+public class OffHeapBenchmark {
+    private static final int PROBES = 1 << 16;
+
+    @Param({"1000", "1000000"})
+    public int size;
+
+    private OffHeapRedBlackTree offHeap;
+    private PersistentLongRedBlackTree heap;
+    private long[] present;
+    private long[] missing;
+    private int probe;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        long[] keys = new long[size];
+        offHeap = new OffHeapRedBlackTree(new DirectNodeStorage());
+        heap = new PersistentLongRedBlackTree();
+        for (int i = 0; i < size; i++) {
+            keys[i] = 2 * random.nextLong(Long.MAX_VALUE / 2);
+            OffHeapRedBlackTree nextOffHeap = offHeap.add(keys[i]);
+            offHeap = nextOffHeap == null ? offHeap : nextOffHeap;
+            PersistentLongRedBlackTree nextHeap = heap.add(keys[i]);
+            heap = nextHeap == null ? heap : nextHeap;
+        }
+        present = new long[PROBES];
+        missing = new long[PROBES];
+        for (int i = 0; i < PROBES; i++) {
+            present[i] = keys[random.nextInt(size)];
+            missing[i] = present[i] + 1;
+        }
+    }
+
+    @Benchmark
+    public boolean offHeapContains() {
+        return offHeap.contains(present[probe++ & (PROBES - 1)]);
+    }
+
+    @Benchmark
+    public boolean heapContains() {
+        return heap.contains(present[probe++ & (PROBES - 1)]);
+    }
+
+    @Benchmark
+    public OffHeapRedBlackTree offHeapAdd() {
+        return offHeap.add(missing[probe++ & (PROBES - 1)]);
+    }
+
+    @Benchmark
+    public PersistentLongRedBlackTree heapAdd() {
+        return heap.add(missing[probe++ & (PROBES - 1)]);
+    }
+}
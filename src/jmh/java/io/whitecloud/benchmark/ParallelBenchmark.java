@@ -0,0 +1,95 @@
+package io.whitecloud.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import io.whitecloud.impl.ParallelSettings;
+import io.whitecloud.impl.PersistentRedBlackTree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Sequential versus fork/join set operations and bulk build on two trees of {@code size} random elements each.
+ * The parallel variants run in the common pool; compare with -Djava.util.concurrent.ForkJoinPool.common.parallelism=N
+ * to see scaling.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Benchmark)
+public class ParallelBenchmark {
+    @Param({"1000000", "10000000"})
+    public int size;
+
+    @Param({"8192"})
+    public int cutoff;
+
+    private PersistentRedBlackTree<Integer> first;
+    private PersistentRedBlackTree<Integer> second;
+    private List<Integer> sorted;
+    private ParallelSettings settings;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        List<Integer> firstValues = new ArrayList<>(size);
+        List<Integer> secondValues = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            firstValues.add(random.nextInt(4 * size));
+            secondValues.add(random.nextInt(4 * size));
+        }
+        first = PersistentRedBlackTree.fromUnsorted(firstValues);
+        second = PersistentRedBlackTree.fromUnsorted(secondValues);
+
+        sorted = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            sorted.add(i);
+        }
+        settings = new ParallelSettings(ForkJoinPool.commonPool(), cutoff);
+    }
+
+    @Benchmark
+    public PersistentRedBlackTree<Integer> unionSequential() {
+        return first.union(second);
+    }
+
+    @Benchmark
+    public PersistentRedBlackTree<Integer> unionParallel() {
+        return first.union(second, settings);
+    }
+
+    @Benchmark
+    public PersistentRedBlackTree<Integer> differenceSequential() {
+        return first.difference(second);
+    }
+
+    @Benchmark
+    public PersistentRedBlackTree<Integer> differenceParallel() {
+        return first.difference(second, settings);
+    }
+
+    @Benchmark
+    public PersistentRedBlackTree<Integer> buildSequential() {
+        return PersistentRedBlackTree.fromSorted(sorted);
+    }
+
+    @Benchmark
+    public PersistentRedBlackTree<Integer> buildParallel() {
+        return PersistentRedBlackTree.fromSorted(sorted, settings);
+    }
+}
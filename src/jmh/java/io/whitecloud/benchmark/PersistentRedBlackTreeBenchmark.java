@@ -0,0 +1,58 @@
+package io.whitecloud.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import io.whitecloud.impl.PersistentRedBlackTree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Single element operations on a tree of {@link TreeState#size} elements.
+ * Every operation is applied to the same version of the tree, so add and delete measure one path copy each.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Thread)
+public class PersistentRedBlackTreeBenchmark {
+    private int probe;
+
+    @Benchmark
+    public PersistentRedBlackTree<Integer> add(TreeState state) {
+        return state.tree.add(state.missing[probe++ & TreeState.mask()]);
+    }
+
+    @Benchmark
+    public PersistentRedBlackTree<Integer> delete(TreeState state) {
+        return state.tree.delete(state.present[probe++ & TreeState.mask()]);
+    }
+
+    @Benchmark
+    public boolean containsPresent(TreeState state) {
+        return state.tree.contains(state.present[probe++ & TreeState.mask()]);
+    }
+
+    @Benchmark
+    public boolean containsMissing(TreeState state) {
+        return state.tree.contains(state.missing[probe++ & TreeState.mask()]);
+    }
+
+    @Benchmark
+    public Integer get(TreeState state) {
+        return state.tree.get(state.present[probe++ & TreeState.mask()] / 2);
+    }
+
+    @Benchmark
+    public int rank(TreeState state) {
+        return state.tree.rank(state.missing[probe++ & TreeState.mask()]);
+    }
+}
@@ -0,0 +1,159 @@
+package io.whitecloud.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import io.whitecloud.impl.PersistentIntRedBlackTree;
+import io.whitecloud.impl.PersistentLongRedBlackTree;
+import io.whitecloud.impl.PersistentRedBlackTree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Trees of the same random keys: the primitive long and int trees versus a tree of boxed longs.
+ * Lookups, single path copies of add and delete, and the heap retained per key, which the footprint
+ * benchmarks report as {@code bytesPerElement} next to the time of building the tree.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Benchmark)
+public class PrimitiveBenchmark {
+    private static final int PROBES = 1 << 16;
+
+    @Param({"1000", "1000000"})
+    public int size;
+
+    private int[] keys;
+    private PersistentLongRedBlackTree longTree;
+    private PersistentIntRedBlackTree intTree;
+    private PersistentRedBlackTree<Long> boxed;
+    private int[] present;
+    private int[] missing;
+    private int probe;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        // even keys, so the odd neighbour of a key is missing
+        keys = random.ints(0, Integer.MAX_VALUE / 2).distinct().limit(size).map(key -> 2 * key).toArray();
+        longTree = buildLong();
+        intTree = buildInt();
+        boxed = buildBoxed();
+
+        present = new int[PROBES];
+        missing = new int[PROBES];
+        for (int i = 0; i < PROBES; i++) {
+            present[i] = keys[random.nextInt(size)];
+            missing[i] = present[i] + 1;
+        }
+    }
+
+    private PersistentLongRedBlackTree buildLong() {
+        PersistentLongRedBlackTree tree = new PersistentLongRedBlackTree();
+        for (int key : keys) {
+            tree = tree.add(key);
+        }
+        return tree;
+    }
+
+    private PersistentIntRedBlackTree buildInt() {
+        PersistentIntRedBlackTree tree = new PersistentIntRedBlackTree();
+        for (int key : keys) {
+            tree = tree.add(key);
+        }
+        return tree;
+    }
+
+    private PersistentRedBlackTree<Long> buildBoxed() {
+        PersistentRedBlackTree<Long> tree = new PersistentRedBlackTree<>();
+        for (int key : keys) {
+            tree = tree.add((long) key);
+        }
+        return tree;
+    }
+
+    @Benchmark
+    public boolean longContains() {
+        return longTree.contains(present[probe++ & (PROBES - 1)]);
+    }
+
+    @Benchmark
+    public boolean intContains() {
+        return intTree.contains(present[probe++ & (PROBES - 1)]);
+    }
+
+    @Benchmark
+    public boolean boxedContains() {
+        return boxed.contains((long) present[probe++ & (PROBES - 1)]);
+    }
+
+    @Benchmark
+    public PersistentLongRedBlackTree longAdd() {
+        return longTree.add(missing[probe++ & (PROBES - 1)]);
+    }
+
+    @Benchmark
+    public PersistentIntRedBlackTree intAdd() {
+        return intTree.add(missing[probe++ & (PROBES - 1)]);
+    }
+
+    @Benchmark
+    public PersistentRedBlackTree<Long> boxedAdd() {
+        return boxed.add((long) missing[probe++ & (PROBES - 1)]);
+    }
+
+    @Benchmark
+    public PersistentLongRedBlackTree longDelete() {
+        return longTree.delete(present[probe++ & (PROBES - 1)]);
+    }
+
+    @Benchmark
+    public PersistentIntRedBlackTree intDelete() {
+        return intTree.delete(present[probe++ & (PROBES - 1)]);
+    }
+
+    @Benchmark
+    public PersistentRedBlackTree<Long> boxedDelete() {
+        return boxed.delete((long) present[probe++ & (PROBES - 1)]);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 1)
+    @Measurement(iterations = 1)
+    public PersistentLongRedBlackTree longFootprint(Footprint footprint) {
+        return footprint.measure(size, this::buildLong);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 1)
+    @Measurement(iterations = 1)
+    public PersistentIntRedBlackTree intFootprint(Footprint footprint) {
+        return footprint.measure(size, this::buildInt);
+    }
+
+    /**
+     * The boxes are counted too, as the tree is their only holder.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 1)
+    @Measurement(iterations = 1)
+    public PersistentRedBlackTree<Long> boxedFootprint(Footprint footprint) {
+        return footprint.measure(size, this::buildBoxed);
+    }
+}
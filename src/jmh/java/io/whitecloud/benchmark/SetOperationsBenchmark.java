@@ -0,0 +1,72 @@
+package io.whitecloud.benchmark;
+
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+import io.whitecloud.PersistentTree;
+import io.whitecloud.impl.PersistentRedBlackTree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Merging a delta of {@code delta} new elements into a tree of {@link TreeState#size} elements:
+ * join-based union versus adding the delta element by element.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Benchmark)
+public class SetOperationsBenchmark {
+    @Param({"1000", "100000"})
+    public int delta;
+
+    private PersistentRedBlackTree<Integer> deltaTree;
+
+    @Setup(Level.Trial)
+    public void setUp(TreeState state) {
+        PersistentRedBlackTree<Integer> tree = new PersistentRedBlackTree<>();
+        for (int i = 0; i < delta; i++) {
+            PersistentRedBlackTree<Integer> next = tree.add(state.missing[i % state.missing.length] + 2 * i);
+            tree = next == null ? tree : next;
+        }
+        deltaTree = tree;
+    }
+
+    @Benchmark
+    public PersistentRedBlackTree<Integer> union(TreeState state) {
+        return state.tree.union(deltaTree);
+    }
+
+    @Benchmark
+    public PersistentRedBlackTree<Integer> addLoop(TreeState state) {
+        PersistentRedBlackTree<Integer> tree = state.tree;
+        Iterator<Integer> iterator = deltaTree.iterator(PersistentTree.Order.InOrder);
+        while (iterator.hasNext()) {
+            PersistentRedBlackTree<Integer> next = tree.add(iterator.next());
+            tree = next == null ? tree : next;
+        }
+        return tree;
+    }
+
+    @Benchmark
+    public PersistentRedBlackTree<Integer> difference(TreeState state) {
+        return state.tree.difference(deltaTree);
+    }
+
+    @Benchmark
+    public PersistentRedBlackTree<Integer> intersection(TreeState state) {
+        return state.tree.intersection(deltaTree);
+    }
+}
@@ -0,0 +1,70 @@
+package io.whitecloud.benchmark;
+
+import java.util.Random;
+
+import io.whitecloud.impl.PersistentRedBlackTree;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Tree of {@code size} elements shared by all benchmark threads.
+ * The tree holds even numbers {@code 0, 2, ..., 2 * (size - 1)}, so odd numbers are guaranteed to be missing.
+ * {@code keys} controls both the order in which the tree is built and the order of probe keys.
+ */
+@State(Scope.Benchmark)
+public class TreeState {
+    public enum KeyOrder {SEQUENTIAL, RANDOM}
+
+    private static final int PROBES = 1 << 16;
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public int size;
+
+    @Param({"SEQUENTIAL", "RANDOM"})
+    public KeyOrder keys;
+
+    public PersistentRedBlackTree<Integer> tree;
+    public Integer[] present;
+    public Integer[] missing;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        if (keys == KeyOrder.RANDOM) {
+            shuffle(order, random);
+        }
+
+        tree = new PersistentRedBlackTree<>();
+        for (int i : order) {
+            tree = tree.add(2 * i);
+        }
+
+        present = new Integer[PROBES];
+        missing = new Integer[PROBES];
+        for (int i = 0; i < PROBES; i++) {
+            int index = keys == KeyOrder.RANDOM ? random.nextInt(size) : i % size;
+            present[i] = 2 * index;
+            missing[i] = 2 * index + 1;
+        }
+    }
+
+    static int mask() {
+        return PROBES - 1;
+    }
+
+    private static void shuffle(int[] array, Random random) {
+        for (int i = array.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int tmp = array[i];
+            array[i] = array[j];
+            array[j] = tmp;
+        }
+    }
+}
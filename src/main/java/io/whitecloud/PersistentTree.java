@@ -2,7 +2,7 @@ package io.whitecloud;
 
 import java.util.Iterator;
 
-public interface PersistentTree<E extends Comparable<E>, V extends PersistentTree<E, V>> {
+public interface PersistentTree<E, V extends PersistentTree<E, V>> {
     /**
      * Add new element to the persistent tree.
      * If element already existed in the tree - will be returned null.
@@ -26,6 +26,11 @@ public interface PersistentTree<E extends Comparable<E>, V extends PersistentTre
      * @return if element is in the tree or not
      */
     boolean contains(E el);
+    /**
+     * Number of elements in the tree.
+     * @return size of the tree
+     */
+    int size();
 
     enum Order {InOrder, PreOrder, PostOrder}
     /**
@@ -0,0 +1,105 @@
+package io.whitecloud.impl;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.UnaryOperator;
+
+/**
+ * Mutable handle to a {@link PersistentRedBlackTree} shared by many threads without locks.
+ * Readers take the current version, which never changes under them. Writers make a new version from the
+ * current one and publish it with a compare-and-set of the reference, retrying when another writer
+ * published first, so they contend only on the reference.
+ * Changes may be applied more than once under contention and must be free of side effects.
+ */
+public final class AtomicRedBlackTree<E> {
+    /**
+     * Counters of writes since the creation or the last reset.
+     * @param updates published versions
+     * @param retries changes applied again because the version they were made from was replaced
+     * @param failedCas compare-and-set operations lost to another writer
+     */
+    public record ContentionStats(long updates, long retries, long failedCas) {}
+
+    private final AtomicReference<PersistentRedBlackTree<E>> current;
+    private final LongAdder updates = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder failedCas = new LongAdder();
+
+    /**
+     * Handle to an empty tree ordered naturally.
+     */
+    public AtomicRedBlackTree() {
+        this(new PersistentRedBlackTree<>());
+    }
+
+    public AtomicRedBlackTree(PersistentRedBlackTree<E> initial) {
+        this.current = new AtomicReference<>(initial);
+    }
+
+    /**
+     * @return current version, which stays the same however the handle is changed later
+     */
+    public PersistentRedBlackTree<E> get() {
+        return current.get();
+    }
+
+    public boolean contains(E el) {
+        return current.get().contains(el);
+    }
+
+    public int size() {
+        return current.get().size();
+    }
+
+    /**
+     * @return if the element was added, false if it already existed
+     */
+    public boolean add(E el) {
+        return update(tree -> tree.add(el)) != null;
+    }
+
+    /**
+     * @return if the element was deleted, false if it didn't exist
+     */
+    public boolean delete(E el) {
+        return update(tree -> tree.delete(el)) != null;
+    }
+
+    /**
+     * Atomically replace the current version with the changed one, for example by a batch of changes
+     * made with {@link PersistentRedBlackTree#asTransient()}.
+     * @param change function returning a changed tree, or the same tree or null if nothing changed
+     * @return published version or null if nothing changed
+     */
+    public PersistentRedBlackTree<E> update(UnaryOperator<PersistentRedBlackTree<E>> change) {
+        PersistentRedBlackTree<E> expected = current.get();
+        while (true) {
+            PersistentRedBlackTree<E> changed = change.apply(expected);
+            if (changed == null || changed == expected) {
+                return null;
+            }
+            // skip the compare-and-set, and its write of the cache line, if it would surely fail
+            PersistentRedBlackTree<E> actual = current.get();
+            if (actual == expected) {
+                if (current.compareAndSet(expected, changed)) {
+                    updates.increment();
+                    return changed;
+                }
+                failedCas.increment();
+                actual = current.get();
+            }
+            retries.increment();
+            expected = actual;
+        }
+    }
+
+    public ContentionStats stats() {
+        return new ContentionStats(updates.sum(), retries.sum(), failedCas.sum());
+    }
+
+    public void resetStats() {
+        updates.reset();
+        retries.reset();
+        failedCas.reset();
+    }
+}
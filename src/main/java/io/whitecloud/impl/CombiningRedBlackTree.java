@@ -0,0 +1,170 @@
+package io.whitecloud.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Flat-combining front end of an {@link AtomicRedBlackTree} for many concurrent writers.
+ * Writers enqueue their operations, and whichever of them takes the combiner lock applies all queued operations
+ * in one {@link TransientRedBlackTree} batch and publishes a single new version, while the others wait for their
+ * results. Under contention this copies each path once per batch instead of once per failed compare-and-set.
+ * Readers use {@link #get()} and never wait.
+ * An operation that fails, for example on an element the comparator rejects, throws in the thread that
+ * requested it and leaves the other operations of its batch unaffected.
+ */
+public final class CombiningRedBlackTree<E> {
+    // bounds the time a combiner spends on others' operations
+    private static final int MAX_BATCH = 1024;
+    private static final int SPINS_BEFORE_YIELD = 64;
+
+    /**
+     * Counters of combined writes since the creation or the last reset.
+     * @param batches published batches
+     * @param operations operations applied in the batches
+     */
+    public record CombiningStats(long batches, long operations) {}
+
+    private static final class Request<E> {
+        final E el;
+        final boolean add;
+        boolean changed;
+        // failure of this operation, thrown in the thread that requested it
+        Throwable failure;
+        volatile boolean done;
+
+        Request(E el, boolean add) {
+            this.el = el;
+            this.add = add;
+        }
+    }
+
+    private final AtomicRedBlackTree<E> tree;
+    private final ConcurrentLinkedQueue<Request<E>> queue = new ConcurrentLinkedQueue<>();
+    private final ReentrantLock combiner = new ReentrantLock();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder operations = new LongAdder();
+
+    /**
+     * Front end of an empty tree ordered naturally.
+     */
+    public CombiningRedBlackTree() {
+        this(new AtomicRedBlackTree<>());
+    }
+
+    /**
+     * @param tree handle the batches are published to; it can still be changed directly
+     */
+    public CombiningRedBlackTree(AtomicRedBlackTree<E> tree) {
+        this.tree = tree;
+    }
+
+    /**
+     * @return current version
+     */
+    public PersistentRedBlackTree<E> get() {
+        return tree.get();
+    }
+
+    public AtomicRedBlackTree<E> handle() {
+        return tree;
+    }
+
+    /**
+     * @return if the element was added, false if it already existed
+     */
+    public boolean add(E el) {
+        return apply(new Request<>(Objects.requireNonNull(el), true));
+    }
+
+    /**
+     * @return if the element was deleted, false if it didn't exist
+     */
+    public boolean delete(E el) {
+        return apply(new Request<>(Objects.requireNonNull(el), false));
+    }
+
+    public CombiningStats stats() {
+        return new CombiningStats(batches.sum(), operations.sum());
+    }
+
+    public void resetStats() {
+        batches.reset();
+        operations.reset();
+    }
+
+    private boolean apply(Request<E> request) {
+        queue.add(request);
+        int spins = 0;
+        while (!request.done) {
+            if (combiner.tryLock()) {
+                try {
+                    combine();
+                } finally {
+                    combiner.unlock();
+                }
+            } else if (++spins % SPINS_BEFORE_YIELD == 0) {
+                Thread.yield();
+            } else {
+                Thread.onSpinWait();
+            }
+        }
+        if (request.failure instanceof RuntimeException e) {
+            throw e;
+        }
+        if (request.failure instanceof Error e) {
+            throw e;
+        }
+        return request.changed;
+    }
+
+    private void combine() {
+        List<Request<E>> batch = new ArrayList<>();
+        for (Request<E> request; batch.size() < MAX_BATCH && (request = queue.poll()) != null; ) {
+            batch.add(request);
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            // may be applied again if the handle is also changed directly
+            tree.update(current -> {
+                TransientRedBlackTree<E> editor = current.asTransient();
+                boolean changed = false;
+                for (Request<E> request : batch) {
+                    request.failure = null;
+                    int size = editor.size();
+                    try {
+                        if (request.add) {
+                            editor.add(request.el);
+                        } else {
+                            editor.delete(request.el);
+                        }
+                    } catch (RuntimeException | Error e) {
+                        // a failed operation stops during the descent, before the editor changes anything
+                        request.failure = e;
+                        continue;
+                    }
+                    request.changed = editor.size() != size;
+                    changed |= request.changed;
+                }
+                return changed ? editor.toPersistent() : current;
+            });
+            batches.increment();
+            operations.add(batch.size());
+        } catch (RuntimeException | Error e) {
+            for (Request<E> request : batch) {
+                if (request.failure == null) {
+                    request.failure = e;
+                }
+            }
+        } finally {
+            for (Request<E> request : batch) {
+                request.done = true;
+            }
+        }
+    }
+}
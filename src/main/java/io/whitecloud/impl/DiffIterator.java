@@ -0,0 +1,143 @@
+package io.whitecloud.impl;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * In-order merge of two trees that reports only the elements in one of them and skips subtrees shared by both.
+ * Each tree has a frontier: a stack of subtrees not yet visited and nodes whose left subtree is done,
+ * ordered so that the top comes first. When both tops are the same subtree, it is dropped from both;
+ * otherwise the larger unvisited top is expanded into its left subtree, its node and its right subtree.
+ * For trees of one lineage that differ in d elements, only the O(d log n) nodes on copied paths are visited.
+ */
+final class DiffIterator<E> implements Iterator<PersistentRedBlackTree.Change<E>> {
+    private final Comparator<? super E> comparator;
+    private final Frontier<E> older;
+    private final Frontier<E> newer;
+    private PersistentRedBlackTree.Change<E> next;
+
+    DiffIterator(Node<E> older, Node<E> newer, Comparator<? super E> comparator) {
+        this.comparator = comparator;
+        this.older = new Frontier<>(older);
+        this.newer = new Frontier<>(newer);
+        this.next = advance();
+    }
+
+    @Override
+    public boolean hasNext() {
+        return next != null;
+    }
+
+    @Override
+    public PersistentRedBlackTree.Change<E> next() {
+        if (next == null) {
+            throw new NoSuchElementException();
+        }
+        PersistentRedBlackTree.Change<E> change = next;
+        next = advance();
+        return change;
+    }
+
+    private PersistentRedBlackTree.Change<E> advance() {
+        while (!older.isEmpty() && !newer.isEmpty()) {
+            Node<E> first = older.top();
+            Node<E> second = newer.top();
+            boolean firstVisited = older.topIsVisited();
+            boolean secondVisited = newer.topIsVisited();
+            if (first == second && firstVisited == secondVisited) {
+                older.pop();
+                newer.pop();
+            } else if (!firstVisited && (secondVisited || Node.size(first) >= Node.size(second))) {
+                older.expand();
+            } else if (!secondVisited) {
+                newer.expand();
+            } else {
+                int comparisonResult = comparator.compare(first.value(), second.value());
+                if (comparisonResult < 0) {
+                    older.pop();
+                    return new PersistentRedBlackTree.Change<>(first.value(), false);
+                }
+                newer.pop();
+                if (comparisonResult > 0) {
+                    return new PersistentRedBlackTree.Change<>(second.value(), true);
+                }
+                older.pop();
+            }
+        }
+        if (!older.isEmpty()) {
+            return new PersistentRedBlackTree.Change<>(older.popFirst().value(), false);
+        }
+        if (!newer.isEmpty()) {
+            return new PersistentRedBlackTree.Change<>(newer.popFirst().value(), true);
+        }
+        return null;
+    }
+
+    private static final class Frontier<E> {
+        private Node<E>[] nodes;
+        private boolean[] visited;
+        private int size;
+
+        @SuppressWarnings("unchecked")
+        Frontier(Node<E> root) {
+            // every expanded level leaves at most two entries on the stack
+            this.nodes = (Node<E>[]) new Node<?>[4 * Node.blackHeight(root) + 2];
+            this.visited = new boolean[nodes.length];
+            push(root, false);
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        Node<E> top() {
+            return nodes[size - 1];
+        }
+
+        boolean topIsVisited() {
+            return visited[size - 1];
+        }
+
+        void pop() {
+            nodes[--size] = null;
+        }
+
+        /**
+         * Replace the unvisited subtree on the top with its parts, the left subtree on the top.
+         */
+        void expand() {
+            Node<E> node = top();
+            pop();
+            push(node.right(), false);
+            push(node, true);
+            push(node.left(), false);
+        }
+
+        /**
+         * @return first node in order, removed from the frontier
+         */
+        Node<E> popFirst() {
+            while (!topIsVisited()) {
+                expand();
+            }
+            Node<E> node = top();
+            pop();
+            return node;
+        }
+
+        private void push(Node<E> node, boolean isVisited) {
+            if (node == null) {
+                return;
+            }
+            if (size == nodes.length) {
+                nodes = Arrays.copyOf(nodes, size * 2);
+                visited = Arrays.copyOf(visited, size * 2);
+            }
+            nodes[size] = node;
+            visited[size] = isVisited;
+            size++;
+        }
+    }
+}
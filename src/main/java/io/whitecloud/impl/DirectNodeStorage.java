@@ -0,0 +1,29 @@
+package io.whitecloud.impl;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Node storage in direct buffers outside of the Java heap.
+ * The memory is not scanned by the garbage collector; it is released when the storage becomes unreachable.
+ * Its total size is limited by {@code -XX:MaxDirectMemorySize}.
+ */
+public final class DirectNodeStorage extends NodeStorage {
+    public static final int DEFAULT_CHUNK_BITS = 26;
+
+    public DirectNodeStorage() {
+        this(DEFAULT_CHUNK_BITS);
+    }
+
+    /**
+     * @param chunkBits log2 of the size of one direct buffer
+     */
+    public DirectNodeStorage(int chunkBits) {
+        super(chunkBits, 0);
+    }
+
+    @Override
+    protected ByteBuffer newChunk(int index, int size) {
+        return ByteBuffer.allocateDirect(size).order(ByteOrder.nativeOrder());
+    }
+}
@@ -0,0 +1,58 @@
+package io.whitecloud.impl;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Binary format of tree elements for {@link TreeWriter} and {@link TreeReader}.
+ */
+public interface ElementCodec<E> {
+    void write(E element, DataOutput out) throws IOException;
+
+    E read(DataInput in) throws IOException;
+
+    ElementCodec<Integer> INTEGER = new ElementCodec<>() {
+        @Override
+        public void write(Integer element, DataOutput out) throws IOException {
+            out.writeInt(element);
+        }
+
+        @Override
+        public Integer read(DataInput in) throws IOException {
+            return in.readInt();
+        }
+    };
+
+    ElementCodec<Long> LONG = new ElementCodec<>() {
+        @Override
+        public void write(Long element, DataOutput out) throws IOException {
+            out.writeLong(element);
+        }
+
+        @Override
+        public Long read(DataInput in) throws IOException {
+            return in.readLong();
+        }
+    };
+
+    /**
+     * Strings of any length as UTF-8 bytes prefixed by their number.
+     */
+    ElementCodec<String> STRING = new ElementCodec<>() {
+        @Override
+        public void write(String element, DataOutput out) throws IOException {
+            byte[] bytes = element.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        @Override
+        public String read(DataInput in) throws IOException {
+            byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    };
+}
@@ -0,0 +1,70 @@
+package io.whitecloud.impl;
+
+/**
+ * Node keeping an element object, used by {@link PersistentRedBlackTree} and the trees built on it.
+ * A node created by a {@link TransientRedBlackTree} remembers its edit token and may be changed in place
+ * by copies made with the same token, until the editor publishes the tree.
+ */
+class ElementNode<E> extends Node<E> {
+    private E value;
+    private int hash;
+    private boolean hashIsZero;
+    private final Object edit;
+
+    ElementNode(E value, boolean isBlack, Node<E> left, Node<E> right) {
+        this(value, isBlack, left, right, null);
+    }
+
+    ElementNode(E value, boolean isBlack, Node<E> left, Node<E> right, Object edit) {
+        super(isBlack, left, right);
+        this.value = value;
+        this.edit = edit;
+    }
+
+    @Override
+    public E value() {
+        return value;
+    }
+
+    /**
+     * The hash is computed on the first call and cached, so writes never pay for it.
+     * Like {@link String#hashCode()}, a racing reader at worst computes it again:
+     * hash is set only when it isn't 0 and hashIsZero only when it is.
+     */
+    @Override
+    int hash() {
+        int h = hash;
+        if (h == 0 && !hashIsZero) {
+            h = hash(left()) + hash(right()) + (value == null ? 0 : value.hashCode());
+            if (h == 0) {
+                hashIsZero = true;
+            } else {
+                hash = h;
+            }
+        }
+        return h;
+    }
+
+    @Override
+    void update() {
+        super.update();
+        // only nodes of a transient editor are changed in place, and nobody else can see them yet
+        hash = 0;
+        hashIsZero = false;
+    }
+
+    @Override
+    Object edit() {
+        return edit;
+    }
+
+    @Override
+    Node<E> copy(Object edit) {
+        return new ElementNode<>(value, isBlack(), left(), right(), edit);
+    }
+
+    @Override
+    void copyValue(Node<E> source) {
+        value = source.value();
+    }
+}
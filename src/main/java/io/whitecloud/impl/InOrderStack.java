@@ -0,0 +1,40 @@
+package io.whitecloud.impl;
+
+/**
+ * Stack of an ascending walk over a red-black tree: the top is the next node, below it the ancestors still
+ * to be visited. Shared by the range iterators of the primitive trees, which differ only in their keys.
+ */
+final class InOrderStack<E> {
+    private final Node<E>[] nodes;
+    private int size;
+
+    @SuppressWarnings("unchecked")
+    InOrderStack(Node<E> root) {
+        // a path of a red-black tree has at most twice as many nodes as the black height of the root
+        this.nodes = (Node<E>[]) new Node<?>[2 * Node.blackHeight(root) + 1];
+    }
+
+    void push(Node<E> node) {
+        nodes[size++] = node;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    Node<E> peek() {
+        return nodes[size - 1];
+    }
+
+    /**
+     * @return next node, after pushing the leftmost path of its right subtree
+     */
+    Node<E> pop() {
+        Node<E> current = nodes[--size];
+        nodes[size] = null;
+        for (Node<E> node = current.right(); node != null; node = node.left()) {
+            nodes[size++] = node;
+        }
+        return current;
+    }
+}
@@ -0,0 +1,35 @@
+package io.whitecloud.impl;
+
+/**
+ * Node of a {@link PersistentIntRedBlackTree} keeping its key in a primitive field.
+ * It has no element object, hash or edit token, so a node is only the key, color, children and size.
+ * {@link #value()} boxes the key and is meant for diagnostics only.
+ */
+final class IntNode extends Node<Integer> {
+    private int key;
+
+    IntNode(int key, boolean isBlack, Node<Integer> left, Node<Integer> right) {
+        super(isBlack, left, right);
+        this.key = key;
+    }
+
+    static int key(Node<Integer> node) {
+        return ((IntNode) node).key;
+    }
+
+    @Override
+    public Integer value() {
+        return key;
+    }
+
+    @Override
+    Node<Integer> copy(Object edit) {
+        // primitive trees have no transient editors, so there is nothing to own
+        return new IntNode(key, isBlack(), left(), right());
+    }
+
+    @Override
+    void copyValue(Node<Integer> source) {
+        key = ((IntNode) source).key;
+    }
+}
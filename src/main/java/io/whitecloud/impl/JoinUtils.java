@@ -0,0 +1,165 @@
+package io.whitecloud.impl;
+
+import java.util.Comparator;
+
+import static io.whitecloud.impl.TreeUtils.*;
+
+/**
+ * Join-based algorithms on red-black trees (Blelloch, Ferizovic, Sun, "Just Join for Parallel Ordered Sets").
+ * Every operation is expressed through join, which concatenates two trees around a middle element
+ * in time proportional to the difference of their black heights, and split, which cuts a tree by an element.
+ * Subtrees that are not touched are shared with the inputs.
+ * Roots of the results may be red; callers publishing a tree make its root black.
+ */
+class JoinUtils {
+    /**
+     * Result of split.
+     * @param left tree with smaller elements
+     * @param node node with the element equal to the one the tree was split by or null if there is none
+     * @param right tree with greater elements
+     */
+    record Split<E>(Node<E> left, Node<E> node, Node<E> right) {
+        boolean found() {
+            return node != null;
+        }
+    }
+
+    /**
+     * Concatenate two trees with an element between them.
+     * @param left tree with elements less than the middle one
+     * @param middle node whose element goes between the trees, its children are ignored
+     * @param right tree with elements greater than the middle one
+     * @return root of the joined tree, always black
+     */
+    static <E> Node<E> join(Node<E> left, Node<E> middle, Node<E> right) {
+        left = blacken(left);
+        right = blacken(right);
+        int leftHeight = Node.blackHeight(left);
+        int rightHeight = Node.blackHeight(right);
+        if (leftHeight == rightHeight) {
+            return middle.withChildren(left, Node.Direction.LEFT, right, true, null);
+        }
+
+        // descend the spine of the taller tree to the black node of the same height as the shorter one,
+        // put the middle element there as a red node and fix the balance as after an insert
+        Node.Direction dir = leftHeight > rightHeight ? Node.Direction.RIGHT : Node.Direction.LEFT;
+        Node<E> shorter = leftHeight > rightHeight ? right : left;
+        int height = Math.min(leftHeight, rightHeight);
+
+        NodePath<E> path = NodePath.acquire();
+        try {
+            Node.Direction from = null;
+            Node<E> current = leftHeight > rightHeight ? left : right;
+            while (!isBlack(current) || Node.blackHeight(current) != height) {
+                path.push(current, from);
+                from = dir;
+                current = current.getChild(dir);
+            }
+            Node<E> node = middle.withChildren(shorter, dir, current, false, null);
+            return insert(path, node, dir, null);
+        } finally {
+            path.release();
+        }
+    }
+
+    /**
+     * Concatenate two trees, all elements of the left one being less than all elements of the right one.
+     */
+    static <E> Node<E> join(Node<E> left, Node<E> right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        Node<E> last = left;
+        while (last.right() != null) {
+            last = last.right();
+        }
+        return join(removeLast(left, null), last, right);
+    }
+
+    /**
+     * Split the tree into elements less than and greater than the given one.
+     * @return both parts and whether the element itself was in the tree
+     */
+    static <E> Split<E> split(Node<E> node, E el, Comparator<? super E> comparator) {
+        if (node == null) {
+            return new Split<>(null, null, null);
+        }
+        int comparisonResult = comparator.compare(el, node.value());
+        if (comparisonResult == 0) {
+            return new Split<>(node.left(), node, node.right());
+        }
+        if (comparisonResult < 0) {
+            Split<E> split = split(node.left(), el, comparator);
+            return new Split<>(split.left(), split.node(), join(split.right(), node, node.right()));
+        }
+        Split<E> split = split(node.right(), el, comparator);
+        return new Split<>(join(node.left(), node, split.left()), split.node(), split.right());
+    }
+
+    /**
+     * @return tree with elements less than the given one, or not greater if inclusive
+     */
+    static <E> Node<E> head(Node<E> node, E el, Comparator<? super E> comparator, boolean inclusive) {
+        Split<E> split = split(node, el, comparator);
+        return inclusive && split.found() ? join(split.left(), split.node(), null) : split.left();
+    }
+
+    /**
+     * @return tree with elements greater than the given one, or not less if inclusive
+     */
+    static <E> Node<E> tail(Node<E> node, E el, Comparator<? super E> comparator, boolean inclusive) {
+        Split<E> split = split(node, el, comparator);
+        return inclusive && split.found() ? join(null, split.node(), split.right()) : split.right();
+    }
+
+    /**
+     * @return tree with elements of both trees; elements of the second tree are kept for equal ones
+     */
+    static <E> Node<E> union(Node<E> first, Node<E> second, Comparator<? super E> comparator) {
+        if (first == null || first == second) {
+            return second;
+        }
+        if (second == null) {
+            return first;
+        }
+        Split<E> split = split(first, second.value(), comparator);
+        Node<E> left = union(split.left(), second.left(), comparator);
+        Node<E> right = union(split.right(), second.right(), comparator);
+        return join(left, second, right);
+    }
+
+    /**
+     * @return tree with elements present in both trees, taken from the second tree
+     */
+    static <E> Node<E> intersection(Node<E> first, Node<E> second, Comparator<? super E> comparator) {
+        if (first == second) {
+            return first;
+        }
+        if (first == null || second == null) {
+            return null;
+        }
+        Split<E> split = split(first, second.value(), comparator);
+        Node<E> left = intersection(split.left(), second.left(), comparator);
+        Node<E> right = intersection(split.right(), second.right(), comparator);
+        return split.found() ? join(left, second, right) : join(left, right);
+    }
+
+    /**
+     * @return tree with elements of the first tree that are not in the second one
+     */
+    static <E> Node<E> difference(Node<E> first, Node<E> second, Comparator<? super E> comparator) {
+        if (first == null || first == second) {
+            return null;
+        }
+        if (second == null) {
+            return first;
+        }
+        Split<E> split = split(first, second.value(), comparator);
+        Node<E> left = difference(split.left(), second.left(), comparator);
+        Node<E> right = difference(split.right(), second.right(), comparator);
+        return join(left, right);
+    }
+}
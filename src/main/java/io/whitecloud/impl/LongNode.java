@@ -0,0 +1,35 @@
+package io.whitecloud.impl;
+
+/**
+ * Node of a {@link PersistentLongRedBlackTree} keeping its key in a primitive field.
+ * It has no element object, hash or edit token, so a node is only the key, color, children and size.
+ * {@link #value()} boxes the key and is meant for diagnostics only.
+ */
+final class LongNode extends Node<Long> {
+    private long key;
+
+    LongNode(long key, boolean isBlack, Node<Long> left, Node<Long> right) {
+        super(isBlack, left, right);
+        this.key = key;
+    }
+
+    static long key(Node<Long> node) {
+        return ((LongNode) node).key;
+    }
+
+    @Override
+    public Long value() {
+        return key;
+    }
+
+    @Override
+    Node<Long> copy(Object edit) {
+        // primitive trees have no transient editors, so there is nothing to own
+        return new LongNode(key, isBlack(), left(), right());
+    }
+
+    @Override
+    void copyValue(Node<Long> source) {
+        key = ((LongNode) source).key;
+    }
+}
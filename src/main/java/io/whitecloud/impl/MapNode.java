@@ -0,0 +1,44 @@
+package io.whitecloud.impl;
+
+/**
+ * Node of a {@link PersistentRedBlackMap}: the key is the element the tree is ordered by,
+ * the value is kept next to it, so no holder objects are needed.
+ */
+final class MapNode<K, V> extends ElementNode<K> {
+    private V mapValue;
+
+    MapNode(K key, V mapValue, boolean isBlack, Node<K> left, Node<K> right, Object edit) {
+        super(key, isBlack, left, right, edit);
+        this.mapValue = mapValue;
+    }
+
+    public K key() {
+        return value();
+    }
+
+    public V mapValue() {
+        return mapValue;
+    }
+
+    /**
+     * Copy with another value and the same key, color and children.
+     */
+    @SuppressWarnings("unchecked")
+    public MapNode<K, V> withMapValue(V mapValue, Object edit) {
+        MapNode<K, V> node = (MapNode<K, V>) editable(edit);
+        node.mapValue = mapValue;
+        return node;
+    }
+
+    @Override
+    Node<K> copy(Object edit) {
+        return new MapNode<>(value(), mapValue, isBlack(), left(), right(), edit);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    void copyValue(Node<K> source) {
+        super.copyValue(source);
+        mapValue = ((MapNode<K, V>) source).mapValue;
+    }
+}
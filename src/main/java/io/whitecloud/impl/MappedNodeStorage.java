@@ -0,0 +1,120 @@
+package io.whitecloud.impl;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Node storage in a memory-mapped file, used as an append-only log.
+ * The file starts with a header keeping the end of the log and one address chosen by the user (the attachment)
+ * as of the last {@link #commit}. Opening a file maps it without reading the records, so it takes the same time
+ * for any size, and records appended after the last commit are discarded.
+ * Mapped chunks are released by the garbage collector after the storage is closed.
+ */
+public final class MappedNodeStorage extends NodeStorage {
+    public static final int DEFAULT_CHUNK_BITS = 26;
+
+    private static final long MAGIC = 0x5042_5452_4C4F_4701L;
+    private static final int HEADER_SIZE = 64;
+    private static final int MAGIC_OFFSET = 0;
+    private static final int CHUNK_BITS_OFFSET = 8;
+    private static final int END_OFFSET = 16;
+    private static final int ATTACHMENT_OFFSET = 24;
+
+    private final FileChannel channel;
+    private long committedEnd;
+
+    private MappedNodeStorage(FileChannel channel, int chunkBits, long end) {
+        super(chunkBits, end);
+        this.channel = channel;
+        this.committedEnd = end;
+    }
+
+    /**
+     * Open the file with the default chunk size for new files.
+     * @see #open(Path, int)
+     */
+    public static MappedNodeStorage open(Path file) throws IOException {
+        return open(file, DEFAULT_CHUNK_BITS);
+    }
+
+    /**
+     * Open an existing log or create a new one.
+     * @param file file of the log
+     * @param chunkBits log2 of the size of one mapping for a new file; an existing file keeps its own
+     * @return storage positioned at the end of the last commit
+     * @throws IOException if the file can't be opened or isn't a node log
+     */
+    public static MappedNodeStorage open(Path file, int chunkBits) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                                               StandardOpenOption.WRITE);
+        try {
+            if (channel.size() == 0) {
+                MappedNodeStorage storage = new MappedNodeStorage(channel, chunkBits, HEADER_SIZE);
+                storage.chunk(0);
+                storage.putLong(MAGIC_OFFSET, MAGIC);
+                storage.putInt(CHUNK_BITS_OFFSET, chunkBits);
+                storage.putLong(ATTACHMENT_OFFSET, OffHeapNodes.NIL);
+                storage.commit(OffHeapNodes.NIL);
+                return storage;
+            }
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            channel.read(header, 0);
+            if (header.getLong(MAGIC_OFFSET) != MAGIC) {
+                throw new IOException("Not a node log: " + file);
+            }
+            long end = header.getLong(END_OFFSET);
+            MappedNodeStorage storage = new MappedNodeStorage(channel, header.getInt(CHUNK_BITS_OFFSET), end);
+            // map all committed chunks up front, pages are still read lazily
+            for (long address = 0; address < end; address += 1L << storage.chunkBits()) {
+                storage.chunk(address);
+            }
+            return storage;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return attachment of the last commit, -1 if none was given
+     */
+    public long attachment() {
+        return getLong(ATTACHMENT_OFFSET);
+    }
+
+    /**
+     * Make all records appended so far durable, then record the new end of the log and the attachment.
+     * @param attachment address to remember with this commit, e.g. of a record describing it
+     */
+    public void commit(long attachment) throws IOException {
+        checkOpen();
+        long end = end();
+        // only chunks with records appended since the last commit can be dirty
+        for (long address = committedEnd & -(1L << chunkBits()); address < end; address += 1L << chunkBits()) {
+            ((MappedByteBuffer) chunk(address)).force();
+        }
+        putLong(END_OFFSET, end);
+        putLong(ATTACHMENT_OFFSET, attachment);
+        ((MappedByteBuffer) chunk(0)).force();
+        committedEnd = end;
+    }
+
+    @Override
+    protected ByteBuffer newChunk(int index, int size) throws IOException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, (long) index * size, size);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        return buffer;
+    }
+
+    @Override
+    public void close() throws IOException {
+        super.close();
+        channel.close();
+    }
+}
@@ -0,0 +1,115 @@
+package io.whitecloud.impl;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Versions of an {@link OffHeapRedBlackTree} kept in a memory-mapped file.
+ * New nodes of every change are appended to the file, and {@link #commit} appends a record with the root
+ * of the version and the address of the previous record, so committed versions form a list in the file.
+ * Reopening the file reads only this list: nodes are read on demand when versions are searched or iterated.
+ * Like its storage, the log is single-writer.
+ */
+public final class MappedTreeLog implements Closeable {
+    private static final int VERSION_RECORD_SIZE = 16;
+    private static final int ROOT = 0;
+    private static final int PREVIOUS = 8;
+
+    private final MappedNodeStorage storage;
+    private final OffHeapNodes nodes;
+    private long[] roots;
+    private int versions;
+
+    private MappedTreeLog(MappedNodeStorage storage) {
+        this.storage = storage;
+        this.nodes = new OffHeapNodes(storage);
+
+        int count = 0;
+        for (long record = storage.attachment(); record != OffHeapNodes.NIL; record = previous(record)) {
+            count++;
+        }
+        this.roots = new long[Math.max(count, 16)];
+        this.versions = count;
+        for (long record = storage.attachment(); record != OffHeapNodes.NIL; record = previous(record)) {
+            roots[--count] = storage.getLong(record + ROOT);
+        }
+    }
+
+    /**
+     * Open an existing log or create a new one.
+     * @param file file of the log
+     * @return log with all versions committed to the file
+     */
+    public static MappedTreeLog open(Path file) throws IOException {
+        return new MappedTreeLog(MappedNodeStorage.open(file));
+    }
+
+    /**
+     * @see MappedNodeStorage#open(Path, int)
+     */
+    public static MappedTreeLog open(Path file, int chunkBits) throws IOException {
+        return new MappedTreeLog(MappedNodeStorage.open(file, chunkBits));
+    }
+
+    /**
+     * @return empty tree whose changes are appended to this log
+     */
+    public OffHeapRedBlackTree emptyTree() {
+        return new OffHeapRedBlackTree(nodes, OffHeapNodes.NIL);
+    }
+
+    /**
+     * Durably record the version. Nodes of uncommitted versions are lost when the file is reopened.
+     * @param version version made from a tree of this log
+     * @return number of the version
+     */
+    public int commit(OffHeapRedBlackTree version) throws IOException {
+        if (version.storage() != storage) {
+            throw new IllegalArgumentException("Version is not stored in this log");
+        }
+        long record = storage.allocate(VERSION_RECORD_SIZE);
+        storage.putLong(record + ROOT, version.root());
+        storage.putLong(record + PREVIOUS, storage.attachment());
+        storage.commit(record);
+
+        if (versions == roots.length) {
+            roots = Arrays.copyOf(roots, versions * 2);
+        }
+        roots[versions] = version.root();
+        return versions++;
+    }
+
+    /**
+     * @return number of committed versions
+     */
+    public int versions() {
+        return versions;
+    }
+
+    /**
+     * @param index number of the version, from 0 to versions() - 1
+     * @return committed version
+     */
+    public OffHeapRedBlackTree version(int index) {
+        return new OffHeapRedBlackTree(nodes, roots[Objects.checkIndex(index, versions)]);
+    }
+
+    /**
+     * @return last committed version or an empty tree if there are none
+     */
+    public OffHeapRedBlackTree latest() {
+        return versions == 0 ? emptyTree() : version(versions - 1);
+    }
+
+    private long previous(long record) {
+        return storage.getLong(record + PREVIOUS);
+    }
+
+    @Override
+    public void close() throws IOException {
+        storage.close();
+    }
+}
@@ -1,6 +1,12 @@
 package io.whitecloud.impl;
 
-record Node<E>(E value, boolean isBlack, Node<E> left, Node<E> right) {
+/**
+ * Node of a red-black tree: color, children and the fields derived from them, which is all rebalancing needs.
+ * Subclasses keep the element: {@link ElementNode} for trees of objects,
+ * {@link LongNode} and {@link IntNode} keep a primitive key and nothing else.
+ * Nodes reachable from a persistent tree are never changed.
+ */
+abstract class Node<E> {
     enum Direction {
         LEFT, RIGHT;
 
@@ -8,7 +14,69 @@ record Node<E>(E value, boolean isBlack, Node<E> left, Node<E> right) {
             return this == LEFT ? RIGHT : LEFT;
         }
     }
-    public record NodeWithDirection<E>(Node<E> node, Direction direction) {}
+
+    private boolean isBlack;
+    private Node<E> left;
+    private Node<E> right;
+    private int size;
+    private byte blackHeight;
+
+    Node(boolean isBlack, Node<E> left, Node<E> right) {
+        this.isBlack = isBlack;
+        this.left = left;
+        this.right = right;
+        updateShape();
+    }
+
+    public abstract E value();
+
+    public boolean isBlack() {
+        return isBlack;
+    }
+
+    public Node<E> left() {
+        return left;
+    }
+
+    public Node<E> right() {
+        return right;
+    }
+
+    /**
+     * @return number of elements in the subtree of this node
+     */
+    public int size() {
+        return size;
+    }
+
+    public static int size(Node<?> node) {
+        return node == null ? 0 : node.size;
+    }
+
+    /**
+     * @return sum of hash codes of the elements in the subtree of the node, 0 for null
+     */
+    public static int hash(Node<?> node) {
+        return node == null ? 0 : node.hash();
+    }
+
+    /**
+     * @return sum of hash codes of the elements in the subtree, always 0 for nodes of primitive trees
+     */
+    int hash() {
+        return 0;
+    }
+
+    /**
+     * @return number of black nodes on a path from this node down to a leaf, this node included
+     */
+    public int blackHeight() {
+        return blackHeight;
+    }
+
+    public static int blackHeight(Node<?> node) {
+        return node == null ? 0 : node.blackHeight;
+    }
 
     public Node<E> getChild(Direction direction) {
         return switch (direction) {
@@ -21,43 +89,106 @@ record Node<E>(E value, boolean isBlack, Node<E> left, Node<E> right) {
         return this.right == child ? Direction.RIGHT : Direction.LEFT;
     }
 
-    public static <E> NodeBuilder<E> builderFrom(Node<E> node) {
-        return new NodeBuilder<>(node.value, node.isBlack, node.left, node.right);
-    }
+    /*
+     * Copies used by path copying. Each of them allocates at most one node:
+     * a node owned by the given edit token is changed in place, any other node is copied.
+     * Pass null as edit to always copy.
+     */
 
-    public static class NodeBuilder<E> {
-        private E value;
-        private boolean isBlack;
-        private Node<E> left;
-        private Node<E> right;
+    /**
+     * Copy holding the element of another node, and its payload for nodes that carry one.
+     */
+    public Node<E> withValueOf(Node<E> source, Object edit) {
+        Node<E> node = editable(edit);
+        node.copyValue(source);
+        node.update();
+        return node;
+    }
 
-        NodeBuilder(E value, boolean isBlack, Node<E> left, Node<E> right) {
-            this.value = value;
-            this.isBlack = isBlack;
-            this.left = left;
-            this.right = right;
-        }
+    public Node<E> withColor(boolean isBlack, Object edit) {
+        Node<E> node = editable(edit);
+        node.isBlack = isBlack;
+        node.update();
+        return node;
+    }
 
-        public NodeBuilder<E> value(E value) {
-            this.value = value;
-            return this;
-        }
+    public Node<E> withChild(Node<E> child, Direction direction, Object edit) {
+        return withChild(child, direction, isBlack, edit);
+    }
 
-        public NodeBuilder<E> isBlack(boolean isBlack) {
-            this.isBlack = isBlack;
-            return this;
+    public Node<E> withChild(Node<E> child, Direction direction, boolean isBlack, Object edit) {
+        Node<E> node = editable(edit);
+        node.isBlack = isBlack;
+        switch (direction) {
+            case LEFT -> node.left = child;
+            case RIGHT -> node.right = child;
         }
+        node.update();
+        return node;
+    }
 
-        public NodeBuilder<E> child(Node<E> node, Direction direction) {
-            switch (direction) {
-                case LEFT -> left = node;
-                case RIGHT -> right = node;
+    /**
+     * Copy with both children replaced.
+     * @param child child to put in the given direction
+     * @param direction direction of the child
+     * @param opposite child to put in the opposite direction
+     * @param isBlack color of the copy
+     * @param edit edit token of the caller or null
+     */
+    public Node<E> withChildren(Node<E> child, Direction direction, Node<E> opposite, boolean isBlack, Object edit) {
+        Node<E> node = editable(edit);
+        node.isBlack = isBlack;
+        switch (direction) {
+            case LEFT -> {
+                node.left = child;
+                node.right = opposite;
+            }
+            case RIGHT -> {
+                node.left = opposite;
+                node.right = child;
             }
-            return this;
         }
+        node.update();
+        return node;
+    }
+
+    /**
+     * Recompute fields derived from the element and the children.
+     * Intermediate nodes of rebalancing may have children of different black heights;
+     * every node of a finished tree is written after its children, so its fields are exact.
+     */
+    void update() {
+        updateShape();
+    }
 
-        public Node<E> build() {
-            return new Node<>(value, isBlack, left, right);
+    private void updateShape() {
+        size = size(left) + size(right) + 1;
+        blackHeight = (byte) (blackHeight(left) + (isBlack ? 1 : 0));
+    }
+
+    /**
+     * @return edit token of the transient editor owning this node, null for nodes no editor may change
+     */
+    Object edit() {
+        return null;
+    }
+
+    /**
+     * @return this node if it is owned by the edit token, otherwise a copy owned by it
+     */
+    Node<E> editable(Object edit) {
+        if (edit != null && edit() == edit) {
+            return this;
         }
+        return copy(edit);
     }
+
+    /*
+     * Every subclass copies its element, and any payload kept next to it,
+     * so rebalancing never loses them.
+     */
+
+    abstract Node<E> copy(Object edit);
+
+    abstract void copyValue(Node<E> source);
 }
@@ -0,0 +1,91 @@
+package io.whitecloud.impl;
+
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.google.common.collect.MapMaker;
+
+/**
+ * Hash-consing of tree nodes: structurally identical subtrees of interned trees become one instance.
+ * Nodes are identified by their element, color and the identities of their children, which are interned first,
+ * so two subtrees with equal elements in the same shape and colors end up as the same node and are then
+ * compared by reference, for example by {@link PersistentRedBlackTree#equals} and {@link PersistentRedBlackTree#diff}.
+ * The table holds its nodes weakly and may be shared by many threads.
+ * Elements must have {@code equals} and {@code hashCode} consistent with the order of the trees.
+ */
+public final class NodeInterner<E> {
+    /**
+     * Rough size of a node on a 64-bit JVM with compressed references.
+     */
+    public static final int NODE_BYTES = 40;
+
+    /**
+     * Counters since the creation or the last reset.
+     * @param lookups nodes looked up in the table
+     * @param hits nodes replaced by an equivalent node already in the table
+     * @param size number of nodes in the table, including ones not yet removed after being collected
+     */
+    public record Stats(long lookups, long hits, long size) {
+        public double hitRate() {
+            return lookups == 0 ? 0 : (double) hits / lookups;
+        }
+
+        /**
+         * @return estimate of the memory freed by the replaced nodes
+         */
+        public long savedBytes() {
+            return hits * NODE_BYTES;
+        }
+    }
+
+    private record Key(Object value, boolean isBlack, Node<?> left, Node<?> right) {
+        // children are compared by identity, as Node doesn't override equals
+    }
+
+    private final ConcurrentMap<Key, Node<E>> table = new MapMaker().weakValues().makeMap();
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+
+    /**
+     * Replace the nodes of the tree with their interned equivalents, interning the ones that have none.
+     * Subtrees interned before are recognized at their root and skipped, so interning a version made from
+     * an interned one visits only its copied paths.
+     * @return tree with the same elements and shape whose nodes are all interned
+     */
+    public PersistentRedBlackTree<E> intern(PersistentRedBlackTree<E> tree) {
+        Node<E> root = intern(tree.root());
+        return root == tree.root() ? tree : new PersistentRedBlackTree<>(root, tree.comparator());
+    }
+
+    public Stats stats() {
+        return new Stats(lookups.sum(), hits.sum(), table.size());
+    }
+
+    public void resetStats() {
+        lookups.reset();
+        hits.reset();
+    }
+
+    private Node<E> intern(Node<E> node) {
+        if (node == null || table.get(key(node, node.left(), node.right())) == node) {
+            return node;
+        }
+        Node<E> left = intern(node.left());
+        Node<E> right = intern(node.right());
+        lookups.increment();
+        Key key = key(node, left, right);
+        Node<E> candidate = left == node.left() && right == node.right()
+            ? node
+            : new ElementNode<>(node.value(), node.isBlack(), left, right);
+        Node<E> interned = table.putIfAbsent(key, candidate);
+        if (interned == null) {
+            return candidate;
+        }
+        hits.increment();
+        return interned;
+    }
+
+    private static Key key(Node<?> node, Node<?> left, Node<?> right) {
+        return new Key(node.value(), node.isBlack(), left, right);
+    }
+}
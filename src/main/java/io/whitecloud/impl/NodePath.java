@@ -0,0 +1,91 @@
+package io.whitecloud.impl;
+
+import java.util.Arrays;
+
+/**
+ * Search path from the root to the current node, used by insert and remove.
+ * Every entry keeps the node and the direction in which it was reached from the previous entry
+ * (null for the root), so no parent lookups are needed while rebalancing.
+ * Height of a red-black tree is bounded by 2 * log2(n + 1), so the initial capacity is enough for any
+ * int-sized tree and the arrays never grow in practice.
+ * One path per thread is reused between operations.
+ */
+final class NodePath<E> {
+    private static final int INITIAL_CAPACITY = 64;
+    private static final ThreadLocal<NodePath<?>> BUFFER = ThreadLocal.withInitial(NodePath::new);
+
+    private Node<E>[] nodes;
+    private Node.Direction[] directions;
+    private int size;
+    private boolean inUse;
+
+    @SuppressWarnings("unchecked")
+    private NodePath() {
+        nodes = (Node<E>[]) new Node<?>[INITIAL_CAPACITY];
+        directions = new Node.Direction[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Take the path of the current thread.
+     * If it is already taken (e.g. compareTo modifies another tree), a fresh path is returned.
+     */
+    @SuppressWarnings("unchecked")
+    static <E> NodePath<E> acquire() {
+        NodePath<E> path = (NodePath<E>) BUFFER.get();
+        if (path.inUse) {
+            path = new NodePath<>();
+        }
+        path.inUse = true;
+        return path;
+    }
+
+    /**
+     * Return the path to the thread, dropping references to nodes it still holds.
+     */
+    void release() {
+        Arrays.fill(nodes, 0, size, null);
+        size = 0;
+        inUse = false;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    void push(Node<E> node, Node.Direction direction) {
+        if (size == nodes.length) {
+            nodes = Arrays.copyOf(nodes, size * 2);
+            directions = Arrays.copyOf(directions, size * 2);
+        }
+        nodes[size] = node;
+        directions[size] = direction;
+        size++;
+    }
+
+    Node<E> pop() {
+        Node<E> node = nodes[--size];
+        nodes[size] = null;
+        return node;
+    }
+
+    /**
+     * @return last node of the path
+     */
+    Node<E> last() {
+        return nodes[size - 1];
+    }
+
+    /**
+     * @return node before the last one
+     */
+    Node<E> beforeLast() {
+        return nodes[size - 2];
+    }
+
+    /**
+     * @return direction in which the last node was reached from its parent
+     */
+    Node.Direction lastDirection() {
+        return directions[size - 1];
+    }
+}
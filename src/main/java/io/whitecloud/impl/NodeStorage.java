@@ -0,0 +1,141 @@
+package io.whitecloud.impl;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Append-only memory for fixed-size records, addressed by long offsets.
+ * Memory is split into chunks of {@code 2^chunkBits} bytes, records never cross a chunk boundary,
+ * and a record once written is never moved, so an address stays valid until the storage is closed.
+ * Subclasses decide where chunks come from.
+ * Storage is meant for a single writer; readers in other threads need the usual safe publication of the
+ * versions they read.
+ */
+public abstract class NodeStorage implements Closeable {
+    private final int chunkBits;
+    private final long chunkMask;
+    private ByteBuffer[] chunks = new ByteBuffer[16];
+    private long end;
+    private boolean closed;
+
+    /**
+     * @param chunkBits log2 of the chunk size in bytes, from 10 to 30
+     * @param end address where the next record is appended
+     */
+    protected NodeStorage(int chunkBits, long end) {
+        if (chunkBits < 10 || chunkBits > 30) {
+            throw new IllegalArgumentException("Chunk bits must be in [10, 30]: " + chunkBits);
+        }
+        this.chunkBits = chunkBits;
+        this.chunkMask = (1L << chunkBits) - 1;
+        this.end = end;
+    }
+
+    /**
+     * @param index index of the chunk
+     * @param size size of the chunk in bytes
+     * @return buffer for the chunk; its byte order is used for all reads and writes
+     */
+    protected abstract ByteBuffer newChunk(int index, int size) throws IOException;
+
+    /**
+     * Reserve space for a record at the end of the storage.
+     * @param size size of the record in bytes, at most the chunk size
+     * @return address of the record
+     */
+    public long allocate(int size) {
+        checkOpen();
+        long address = end;
+        if ((address & chunkMask) + size > chunkMask + 1) {
+            address = (address | chunkMask) + 1;
+        }
+        chunk(address);
+        end = address + size;
+        return address;
+    }
+
+    /**
+     * @return address where the next record will be appended, which is also the number of bytes used
+     */
+    public long end() {
+        return end;
+    }
+
+    /*
+     * Every access checks that the storage is open, so a closed storage fails with IllegalStateException
+     * instead of reaching into dropped chunks.
+     */
+
+    public long getLong(long address) {
+        checkOpen();
+        return chunks[(int) (address >>> chunkBits)].getLong((int) (address & chunkMask));
+    }
+
+    public int getInt(long address) {
+        checkOpen();
+        return chunks[(int) (address >>> chunkBits)].getInt((int) (address & chunkMask));
+    }
+
+    public byte getByte(long address) {
+        checkOpen();
+        return chunks[(int) (address >>> chunkBits)].get((int) (address & chunkMask));
+    }
+
+    public void putLong(long address, long value) {
+        checkOpen();
+        chunks[(int) (address >>> chunkBits)].putLong((int) (address & chunkMask), value);
+    }
+
+    public void putInt(long address, int value) {
+        checkOpen();
+        chunks[(int) (address >>> chunkBits)].putInt((int) (address & chunkMask), value);
+    }
+
+    public void putByte(long address, byte value) {
+        checkOpen();
+        chunks[(int) (address >>> chunkBits)].put((int) (address & chunkMask), value);
+    }
+
+    /**
+     * @throws IllegalStateException if the storage is closed
+     */
+    public void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("Storage is closed");
+        }
+    }
+
+    /**
+     * Drop all chunks. Every read or write of the storage throws {@link IllegalStateException} afterwards.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        chunks = new ByteBuffer[0];
+    }
+
+    /**
+     * @return chunk containing the address, created if needed
+     */
+    protected ByteBuffer chunk(long address) {
+        int index = (int) (address >>> chunkBits);
+        if (index >= chunks.length) {
+            chunks = Arrays.copyOf(chunks, Math.max(chunks.length * 2, index + 1));
+        }
+        if (chunks[index] == null) {
+            try {
+                chunks[index] = newChunk(index, 1 << chunkBits);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return chunks[index];
+    }
+
+    protected int chunkBits() {
+        return chunkBits;
+    }
+}
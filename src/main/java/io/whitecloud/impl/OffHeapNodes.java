@@ -0,0 +1,403 @@
+package io.whitecloud.impl;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Red-black tree nodes with long keys in a {@link NodeStorage}, and the insert and remove algorithms of
+ * {@link TreeUtils} ported to node addresses.
+ * Every node is a record of {@link #NODE_SIZE} bytes that is never changed after it is written,
+ * so path copying appends new records and all older versions stay readable.
+ */
+final class OffHeapNodes {
+    static final long NIL = -1;
+    static final int NODE_SIZE = 32;
+
+    private static final int KEY = 0;
+    private static final int LEFT = 8;
+    private static final int RIGHT = 16;
+    private static final int SIZE = 24;
+    private static final int BLACK_HEIGHT = 28;
+    private static final int COLOR = 29;
+
+    private static final byte RED = 0;
+    private static final byte BLACK = 1;
+
+    private final NodeStorage storage;
+
+    OffHeapNodes(NodeStorage storage) {
+        this.storage = storage;
+    }
+
+    NodeStorage storage() {
+        return storage;
+    }
+
+    long key(long node) {
+        return storage.getLong(node + KEY);
+    }
+
+    long left(long node) {
+        return storage.getLong(node + LEFT);
+    }
+
+    long right(long node) {
+        return storage.getLong(node + RIGHT);
+    }
+
+    long child(long node, Node.Direction direction) {
+        return storage.getLong(node + (direction == Node.Direction.LEFT ? LEFT : RIGHT));
+    }
+
+    int size(long node) {
+        return node == NIL ? 0 : storage.getInt(node + SIZE);
+    }
+
+    int blackHeight(long node) {
+        return node == NIL ? 0 : storage.getByte(node + BLACK_HEIGHT);
+    }
+
+    boolean isBlack(long node) {
+        return node == NIL || storage.getByte(node + COLOR) != RED;
+    }
+
+    /**
+     * Append a new node.
+     * @return address of the node
+     */
+    long node(long key, boolean isBlack, long left, long right) {
+        long node = storage.allocate(NODE_SIZE);
+        storage.putLong(node + KEY, key);
+        storage.putLong(node + LEFT, left);
+        storage.putLong(node + RIGHT, right);
+        storage.putInt(node + SIZE, size(left) + size(right) + 1);
+        storage.putByte(node + BLACK_HEIGHT, (byte) (blackHeight(left) + (isBlack ? 1 : 0)));
+        storage.putByte(node + COLOR, isBlack ? BLACK : RED);
+        return node;
+    }
+
+    private long withColor(long node, boolean isBlack) {
+        return node(key(node), isBlack, left(node), right(node));
+    }
+
+    private long withChild(long node, long child, Node.Direction direction, boolean isBlack) {
+        return direction == Node.Direction.LEFT
+            ? node(key(node), isBlack, child, right(node))
+            : node(key(node), isBlack, left(node), child);
+    }
+
+    private long withChildren(long node, long child, Node.Direction direction, long opposite, boolean isBlack) {
+        return direction == Node.Direction.LEFT
+            ? node(key(node), isBlack, child, opposite)
+            : node(key(node), isBlack, opposite, child);
+    }
+
+    long find(long root, long key) {
+        storage.checkOpen();
+        long current = root;
+        while (current != NIL) {
+            long currentKey = key(current);
+            if (key == currentKey) {
+                return current;
+            }
+            current = key < currentKey ? left(current) : right(current);
+        }
+        return NIL;
+    }
+
+    /**
+     * @return new root or the same root if the key is already in the tree
+     */
+    long insert(long root, long key) {
+        storage.checkOpen();
+        OffHeapPath path = OffHeapPath.acquire();
+        try {
+            Node.Direction dir = null;
+            long current = root;
+            while (current != NIL) {
+                long currentKey = key(current);
+                if (key == currentKey) {
+                    return root;
+                }
+                path.push(current, dir);
+                dir = key < currentKey ? Node.Direction.LEFT : Node.Direction.RIGHT;
+                current = child(current, dir);
+            }
+            if (path.isEmpty()) {
+                return node(key, true, NIL, NIL);
+            }
+            return insert(path, node(key, false, NIL, NIL), dir);
+        } finally {
+            path.release();
+        }
+    }
+
+    /**
+     * @return new root or the same root if the key isn't in the tree
+     */
+    long remove(long root, long key) {
+        storage.checkOpen();
+        OffHeapPath path = OffHeapPath.acquire();
+        try {
+            Node.Direction dir = null;
+            long current = root;
+            while (current != NIL) {
+                long currentKey = key(current);
+                if (key == currentKey) {
+                    return remove(path, current, dir);
+                }
+                path.push(current, dir);
+                dir = key < currentKey ? Node.Direction.LEFT : Node.Direction.RIGHT;
+                current = child(current, dir);
+            }
+            return root;
+        } finally {
+            path.release();
+        }
+    }
+
+    private long insert(OffHeapPath path, long node, Node.Direction nodeDirection) {
+        if (!isBlack(path.last())) {
+            return insertUncleRed(path, node, nodeDirection);
+        }
+        return updateParentsUpToRoot(path, node, nodeDirection);
+    }
+
+    private long insertUncleRed(OffHeapPath path, long node, Node.Direction nodeDirection) {
+        long grandParent = path.beforeLast();
+        Node.Direction parentDirection = path.lastDirection();
+        long uncle = child(grandParent, parentDirection.getOpposite());
+
+        if (isBlack(uncle)) {
+            return insertUncleBlack(path, node, nodeDirection);
+        }
+
+        long parent = path.pop();
+        Node.Direction grandParentDirection = path.lastDirection();
+        path.pop();
+
+        long newParent = withChild(parent, node, nodeDirection, true);
+        long newUncle = withColor(uncle, true);
+        if (path.isEmpty()) {
+            return withChildren(grandParent, newParent, parentDirection, newUncle, true);
+        }
+        long newGrandParent = withChildren(grandParent, newParent, parentDirection, newUncle, false);
+        return insert(path, newGrandParent, grandParentDirection);
+    }
+
+    private long insertUncleBlack(OffHeapPath path, long node, Node.Direction nodeDirection) {
+        Node.Direction parentDirection = path.lastDirection();
+        Node.Direction uncleDirection = parentDirection.getOpposite();
+        long parent = path.pop();
+        Node.Direction grandParentDirection = path.lastDirection();
+        long grandParent = path.pop();
+
+        long newSubtreeRoot;
+        if (nodeDirection == parentDirection) {
+            long newGrandParent = withChild(grandParent, child(parent, uncleDirection), parentDirection, false);
+            newSubtreeRoot = withChildren(parent, node, parentDirection, newGrandParent, true);
+        } else {
+            long newParent = withChild(parent, child(node, parentDirection), nodeDirection, false);
+            long newGrandParent = withChild(grandParent, child(node, nodeDirection), parentDirection, false);
+            newSubtreeRoot = withChildren(node, newParent, parentDirection, newGrandParent, true);
+        }
+        return updateParentsUpToRoot(path, newSubtreeRoot, grandParentDirection);
+    }
+
+    private long remove(OffHeapPath path, long node, Node.Direction nodeDirection) {
+        long right = right(node);
+        if (left(node) != NIL && right != NIL) {
+            long successor = right;
+            while (left(successor) != NIL) {
+                successor = left(successor);
+            }
+            path.push(node(key(successor), isBlack(node), left(node), right), nodeDirection);
+
+            Node.Direction dir = Node.Direction.RIGHT;
+            long current = right;
+            while (current != successor) {
+                path.push(current, dir);
+                dir = Node.Direction.LEFT;
+                current = left(current);
+            }
+            return removeOneChild(path, successor, dir);
+        }
+        return removeOneChild(path, node, nodeDirection);
+    }
+
+    private long removeOneChild(OffHeapPath path, long node, Node.Direction nodeDirection) {
+        long child = right(node) == NIL ? left(node) : right(node);
+        boolean childIsBlack = isBlack(child);
+        long newChild = child == NIL ? NIL : withColor(child, true);
+
+        if (path.isEmpty()) {
+            return newChild;
+        }
+        if (isBlack(node) && childIsBlack) {
+            return removeRedSibling(path, newChild, nodeDirection);
+        }
+        return updateParentsUpToRoot(path, newChild, nodeDirection);
+    }
+
+    private long removeRedSibling(OffHeapPath path, long node, Node.Direction nodeDirection) {
+        long parent = path.last();
+        long sibling = child(parent, nodeDirection.getOpposite());
+
+        if (!isBlack(sibling)) {
+            long newParent = withChildren(parent, node, nodeDirection, child(sibling, nodeDirection), false);
+            long replacement = withChild(sibling, newParent, nodeDirection, true);
+
+            Node.Direction parentDirection = path.lastDirection();
+            path.pop();
+            path.push(replacement, parentDirection);
+            path.push(newParent, nodeDirection);
+        }
+        return removeBlackSibling(path, node, nodeDirection);
+    }
+
+    private long removeBlackSibling(OffHeapPath path, long node, Node.Direction nodeDirection) {
+        Node.Direction siblingDirection = nodeDirection.getOpposite();
+        long parent = path.last();
+        boolean parentIsBlack = isBlack(parent);
+        long sibling = child(parent, siblingDirection);
+
+        if (sibling == NIL) {
+            Node.Direction parentDirection = path.lastDirection();
+            path.pop();
+            return updateParentsUpToRoot(path, withChild(parent, node, nodeDirection, true), parentDirection);
+        }
+
+        long newSubtreeRoot;
+        if (isBlack(child(sibling, siblingDirection))) {
+            long siblingChild = child(sibling, nodeDirection);
+            if (isBlack(siblingChild)) {
+                return removeBlackSiblingWithBlackChildren(path, node, nodeDirection);
+            }
+            long newSibling = withChild(sibling, child(siblingChild, siblingDirection), nodeDirection, true);
+            long newParent = withChildren(parent, node, nodeDirection, child(siblingChild, nodeDirection), true);
+            newSubtreeRoot = withChildren(siblingChild, newParent, nodeDirection, newSibling, parentIsBlack);
+        } else {
+            long newSiblingChild = withColor(child(sibling, siblingDirection), true);
+            long newParent = withChildren(parent, node, nodeDirection, child(sibling, nodeDirection), true);
+            newSubtreeRoot = withChildren(sibling, newParent, nodeDirection, newSiblingChild, parentIsBlack);
+        }
+
+        Node.Direction parentDirection = path.lastDirection();
+        path.pop();
+        return updateParentsUpToRoot(path, newSubtreeRoot, parentDirection);
+    }
+
+    private long removeBlackSiblingWithBlackChildren(OffHeapPath path, long node, Node.Direction nodeDirection) {
+        Node.Direction parentDirection = path.lastDirection();
+        long parent = path.pop();
+        boolean parentIsBlack = isBlack(parent);
+        long newSibling = withColor(child(parent, nodeDirection.getOpposite()), false);
+        long newParent = withChildren(parent, node, nodeDirection, newSibling, true);
+
+        if (parentIsBlack) {
+            if (path.isEmpty()) {
+                return newParent;
+            }
+            return removeRedSibling(path, newParent, parentDirection);
+        }
+        return updateParentsUpToRoot(path, newParent, parentDirection);
+    }
+
+    private long updateParentsUpToRoot(OffHeapPath path, long node, Node.Direction nodeDirection) {
+        while (!path.isEmpty()) {
+            Node.Direction parentDirection = path.lastDirection();
+            long parent = path.pop();
+            node = withChild(parent, node, nodeDirection, isBlack(parent));
+            nodeDirection = parentDirection;
+        }
+        return node;
+    }
+
+    /**
+     * Copy the subtree into another storage. This storage is only read, so it stays intact if copying fails.
+     * @param copies addresses of the nodes copied so far, so that nodes reachable from several roots
+     *               are copied once
+     * @return address of the copy
+     */
+    long copyTo(long node, OffHeapNodes target, Forwarding copies) {
+        if (node == NIL) {
+            return NIL;
+        }
+        long copy = copies.get(node);
+        if (copy != NIL) {
+            return copy;
+        }
+        long left = copyTo(left(node), target, copies);
+        long right = copyTo(right(node), target, copies);
+        copy = target.node(key(node), isBlack(node), left, right);
+        copies.put(node, copy);
+        return copy;
+    }
+
+    /**
+     * @return black height of the subtree or -1 if it isn't a valid red-black tree
+     */
+    int checkIsRedBlackTree(long node) {
+        if (node == NIL) {
+            return 0;
+        }
+        if (!isBlack(node) && (!isBlack(left(node)) || !isBlack(right(node)))) {
+            return -1;
+        }
+        int leftHeight = checkIsRedBlackTree(left(node));
+        int rightHeight = checkIsRedBlackTree(right(node));
+        if (leftHeight == -1 || leftHeight != rightHeight) {
+            return -1;
+        }
+        int height = leftHeight + (isBlack(node) ? 1 : 0);
+        if (blackHeight(node) != height || size(node) != size(left(node)) + size(right(node)) + 1) {
+            return -1;
+        }
+        return height;
+    }
+
+    /**
+     * Addresses of copied nodes by the addresses of their originals, in a scratch storage outside of the heap,
+     * so that compacting any number of nodes takes no Java heap.
+     * Nodes don't overlap, so the address of a node divided by the node size is a distinct slot; the table
+     * takes 8 bytes per {@link #NODE_SIZE} bytes of the source storage.
+     */
+    static final class Forwarding implements Closeable {
+        private final NodeStorage table;
+
+        /**
+         * @param sourceEnd end of the storage of the originals
+         */
+        Forwarding(long sourceEnd) {
+            long size = (sourceEnd / NODE_SIZE + 1) * Long.BYTES;
+            // small tables take a single small chunk
+            int chunkBits = Math.max(10, Math.min(DirectNodeStorage.DEFAULT_CHUNK_BITS,
+                64 - Long.numberOfLeadingZeros(size - 1)));
+            table = new DirectNodeStorage(chunkBits);
+            // direct buffers are zeroed, and 0 marks a node that wasn't copied
+            while (table.end() < size) {
+                table.allocate(1 << chunkBits);
+            }
+        }
+
+        /**
+         * @return address of the copy or {@link #NIL} if the node wasn't copied
+         */
+        long get(long node) {
+            return table.getLong(slot(node)) - 1;
+        }
+
+        void put(long node, long copy) {
+            table.putLong(slot(node), copy + 1);
+        }
+
+        private static long slot(long node) {
+            return node / NODE_SIZE * Long.BYTES;
+        }
+
+        @Override
+        public void close() throws IOException {
+            table.close();
+        }
+    }
+}
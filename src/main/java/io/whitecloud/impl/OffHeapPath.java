@@ -0,0 +1,60 @@
+package io.whitecloud.impl;
+
+import java.util.Arrays;
+
+/**
+ * {@link NodePath} of node addresses for off-heap trees.
+ */
+final class OffHeapPath {
+    private static final int INITIAL_CAPACITY = 64;
+    private static final ThreadLocal<OffHeapPath> BUFFER = ThreadLocal.withInitial(OffHeapPath::new);
+
+    private long[] nodes = new long[INITIAL_CAPACITY];
+    private Node.Direction[] directions = new Node.Direction[INITIAL_CAPACITY];
+    private int size;
+    private boolean inUse;
+
+    static OffHeapPath acquire() {
+        OffHeapPath path = BUFFER.get();
+        if (path.inUse) {
+            path = new OffHeapPath();
+        }
+        path.inUse = true;
+        return path;
+    }
+
+    void release() {
+        size = 0;
+        inUse = false;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    void push(long node, Node.Direction direction) {
+        if (size == nodes.length) {
+            nodes = Arrays.copyOf(nodes, size * 2);
+            directions = Arrays.copyOf(directions, size * 2);
+        }
+        nodes[size] = node;
+        directions[size] = direction;
+        size++;
+    }
+
+    long pop() {
+        return nodes[--size];
+    }
+
+    long last() {
+        return nodes[size - 1];
+    }
+
+    long beforeLast() {
+        return nodes[size - 2];
+    }
+
+    Node.Direction lastDirection() {
+        return directions[size - 1];
+    }
+}
@@ -0,0 +1,214 @@
+package io.whitecloud.impl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import com.google.common.annotations.VisibleForTesting;
+import io.whitecloud.PersistentTree;
+
+/**
+ * Persistent red-black tree of long keys whose nodes live outside of the Java heap, in a {@link NodeStorage}.
+ * A version is just a storage and the address of its root, so versions cost the garbage collector nothing.
+ * Path copying appends new nodes to the storage and never changes old ones: all versions stay readable
+ * until the storage is closed or compacted.
+ * Storage is single-writer: versions sharing a storage must be changed by one thread at a time.
+ */
+public class OffHeapRedBlackTree implements PersistentTree<Long, OffHeapRedBlackTree> {
+    private final OffHeapNodes nodes;
+    private final long root;
+
+    /**
+     * Empty tree whose nodes will be appended to the storage.
+     * @param storage storage for nodes of this tree and all versions made from it
+     */
+    public OffHeapRedBlackTree(NodeStorage storage) {
+        this(new OffHeapNodes(storage), OffHeapNodes.NIL);
+    }
+
+    OffHeapRedBlackTree(OffHeapNodes nodes, long root) {
+        this.nodes = nodes;
+        this.root = root;
+    }
+
+    /**
+     * Copy the nodes reachable from the given versions into another storage and close their storage,
+     * reclaiming the space of all other versions.
+     * Subtrees shared between the versions stay shared in the copy.
+     * Versions not passed here, and the passed ones themselves, must not be used afterwards.
+     * The source storage is only read while copying and closed once all versions are copied,
+     * so if copying fails it is left open and unchanged.
+     * Copied nodes are tracked in a scratch direct buffer of a quarter of the size of the source storage,
+     * so compaction takes no Java heap however many nodes it copies.
+     * @param versions versions to keep, all in the same storage
+     * @param target storage for the copies
+     * @return copies of the versions, in the same order
+     */
+    public static List<OffHeapRedBlackTree> compact(List<OffHeapRedBlackTree> versions, NodeStorage target)
+        throws IOException
+    {
+        if (versions.isEmpty()) {
+            return List.of();
+        }
+        OffHeapNodes source = versions.get(0).nodes;
+        OffHeapNodes copies = new OffHeapNodes(target);
+        List<OffHeapRedBlackTree> result = new ArrayList<>(versions.size());
+        for (OffHeapRedBlackTree version : versions) {
+            if (version.nodes.storage() != source.storage()) {
+                throw new IllegalArgumentException("Versions are in different storages");
+            }
+        }
+        try (OffHeapNodes.Forwarding forwarding = new OffHeapNodes.Forwarding(source.storage().end())) {
+            for (OffHeapRedBlackTree version : versions) {
+                result.add(new OffHeapRedBlackTree(copies, source.copyTo(version.root, copies, forwarding)));
+            }
+        }
+        source.storage().close();
+        return result;
+    }
+
+    public OffHeapRedBlackTree add(long key) {
+        long newRoot = nodes.insert(root, key);
+        return newRoot == root ? null : new OffHeapRedBlackTree(nodes, newRoot);
+    }
+
+    public OffHeapRedBlackTree delete(long key) {
+        long newRoot = nodes.remove(root, key);
+        return newRoot == root ? null : new OffHeapRedBlackTree(nodes, newRoot);
+    }
+
+    public boolean contains(long key) {
+        return nodes.find(root, key) != OffHeapNodes.NIL;
+    }
+
+    @Override
+    public OffHeapRedBlackTree add(Long key) {
+        return add(key.longValue());
+    }
+
+    @Override
+    public OffHeapRedBlackTree delete(Long key) {
+        return delete(key.longValue());
+    }
+
+    @Override
+    public boolean contains(Long key) {
+        return contains(key.longValue());
+    }
+
+    @Override
+    public int size() {
+        nodes.storage().checkOpen();
+        return nodes.size(root);
+    }
+
+    /**
+     * @return address of the root in the storage, or -1 for an empty tree
+     */
+    public long root() {
+        return root;
+    }
+
+    public NodeStorage storage() {
+        return nodes.storage();
+    }
+
+    @Override
+    public Iterator<Long> iterator(Order order) {
+        return new OrderIterator(order);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("[");
+        Iterator<Long> iterator = iterator(Order.InOrder);
+        while (iterator.hasNext()) {
+            builder.append(iterator.next());
+            if (iterator.hasNext()) {
+                builder.append(", ");
+            }
+        }
+        return builder.append(']').toString();
+    }
+
+    @VisibleForTesting
+    public boolean checkIsRedBlackTree() {
+        return nodes.isBlack(root) && nodes.checkIsRedBlackTree(root) != -1;
+    }
+
+    /**
+     * Iterator for all orders: a node is first pushed unexpanded, and expanding it pushes its children
+     * and the node itself, marked expanded, in reverse of the order they are visited.
+     */
+    private class OrderIterator implements Iterator<Long> {
+        private final Order order;
+        private long[] stack;
+        private boolean[] expanded;
+        private int size;
+
+        OrderIterator(Order order) {
+            nodes.storage().checkOpen();
+            this.order = order;
+            // every expanded level leaves at most two nodes on the stack
+            this.stack = new long[4 * nodes.blackHeight(root) + 2];
+            this.expanded = new boolean[stack.length];
+            push(root, false);
+            advance();
+        }
+
+        public boolean hasNext() {
+            return size > 0;
+        }
+
+        public Long next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            long node = stack[--size];
+            advance();
+            return nodes.key(node);
+        }
+
+        /**
+         * Expand nodes until an expanded one is on the top of the stack.
+         */
+        private void advance() {
+            while (size > 0 && !expanded[size - 1]) {
+                long node = stack[--size];
+                switch (order) {
+                    case PreOrder -> {
+                        push(nodes.right(node), false);
+                        push(nodes.left(node), false);
+                        push(node, true);
+                    }
+                    case InOrder -> {
+                        push(nodes.right(node), false);
+                        push(node, true);
+                        push(nodes.left(node), false);
+                    }
+                    case PostOrder -> {
+                        push(node, true);
+                        push(nodes.right(node), false);
+                        push(nodes.left(node), false);
+                    }
+                }
+            }
+        }
+
+        private void push(long node, boolean isExpanded) {
+            if (node == OffHeapNodes.NIL) {
+                return;
+            }
+            if (size == stack.length) {
+                stack = Arrays.copyOf(stack, size * 2);
+                expanded = Arrays.copyOf(expanded, size * 2);
+            }
+            stack[size] = node;
+            expanded[size] = isExpanded;
+            size++;
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package io.whitecloud.impl;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Settings of parallel bulk operations.
+ * @param pool pool running the operation
+ * @param sequentialCutoff subtrees with fewer elements are processed sequentially
+ */
+public record ParallelSettings(ForkJoinPool pool, int sequentialCutoff) {
+    public static final int DEFAULT_SEQUENTIAL_CUTOFF = 8192;
+
+    public ParallelSettings {
+        if (sequentialCutoff < 1) {
+            throw new IllegalArgumentException("Sequential cutoff must be positive: " + sequentialCutoff);
+        }
+    }
+
+    /**
+     * @return settings using the common pool and the default cutoff
+     */
+    public static ParallelSettings common() {
+        return new ParallelSettings(ForkJoinPool.commonPool(), DEFAULT_SEQUENTIAL_CUTOFF);
+    }
+}
@@ -0,0 +1,103 @@
+package io.whitecloud.impl;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Fork/join versions of the join-based operations and of the bulk build.
+ * Both halves of every recursion step are independent, so the left one is forked and the right one
+ * is computed by the current thread. Parts smaller than the cutoff fall back to the sequential code.
+ * All methods must be called from a task running in a fork/join pool.
+ */
+class ParallelUtils {
+    static <E> Node<E> union(Node<E> first, Node<E> second, Comparator<? super E> comparator, int cutoff) {
+        if (first == null || first == second) {
+            return second;
+        }
+        if (second == null) {
+            return first;
+        }
+        if (isSmall(first, second, cutoff)) {
+            return JoinUtils.union(first, second, comparator);
+        }
+        JoinUtils.Split<E> split = JoinUtils.split(first, second.value(), comparator);
+        ForkJoinTask<Node<E>> left = ForkJoinTask.adapt(() -> union(split.left(), second.left(), comparator, cutoff)).fork();
+        Node<E> right = union(split.right(), second.right(), comparator, cutoff);
+        return JoinUtils.join(left.join(), second, right);
+    }
+
+    static <E> Node<E> intersection(Node<E> first, Node<E> second, Comparator<? super E> comparator, int cutoff) {
+        if (first == second) {
+            return first;
+        }
+        if (first == null || second == null) {
+            return null;
+        }
+        if (isSmall(first, second, cutoff)) {
+            return JoinUtils.intersection(first, second, comparator);
+        }
+        JoinUtils.Split<E> split = JoinUtils.split(first, second.value(), comparator);
+        ForkJoinTask<Node<E>> left = ForkJoinTask.adapt(() -> intersection(split.left(), second.left(), comparator, cutoff)).fork();
+        Node<E> right = intersection(split.right(), second.right(), comparator, cutoff);
+        return split.found() ? JoinUtils.join(left.join(), second, right) : JoinUtils.join(left.join(), right);
+    }
+
+    static <E> Node<E> difference(Node<E> first, Node<E> second, Comparator<? super E> comparator, int cutoff) {
+        if (first == null || first == second) {
+            return null;
+        }
+        if (second == null) {
+            return first;
+        }
+        if (isSmall(first, second, cutoff)) {
+            return JoinUtils.difference(first, second, comparator);
+        }
+        JoinUtils.Split<E> split = JoinUtils.split(first, second.value(), comparator);
+        ForkJoinTask<Node<E>> left = ForkJoinTask.adapt(() -> difference(split.left(), second.left(), comparator, cutoff)).fork();
+        Node<E> right = difference(split.right(), second.right(), comparator, cutoff);
+        return JoinUtils.join(left.join(), right);
+    }
+
+    /**
+     * Parallel version of {@link TreeUtils#buildFromSorted}.
+     * @param elements strictly increasing elements with fast random access
+     * @throws IllegalArgumentException if elements are not strictly increasing
+     */
+    static <E> Node<E> buildFromSorted(List<? extends E> elements, Comparator<? super E> comparator, int cutoff) {
+        int size = elements.size();
+        int redLevel = 31 - Integer.numberOfLeadingZeros(size + 1);
+        return buildFromSorted(elements, comparator, 0, 0, size - 1, redLevel, cutoff);
+    }
+
+    private static <E> Node<E> buildFromSorted(List<? extends E> elements, Comparator<? super E> comparator, int level,
+                                               int low, int high, int redLevel, int cutoff)
+    {
+        if (high < low) {
+            return null;
+        }
+        int middle = (low + high) >>> 1;
+        E value = elements.get(middle);
+        if (middle > 0 && comparator.compare(elements.get(middle - 1), value) >= 0) {
+            throw new IllegalArgumentException("Elements are not strictly increasing: " + elements.get(middle - 1) + ", " + value);
+        }
+
+        Node<E> left;
+        Node<E> right;
+        if (high - low + 1 < cutoff) {
+            left = buildFromSorted(elements, comparator, level + 1, low, middle - 1, redLevel, cutoff);
+            right = buildFromSorted(elements, comparator, level + 1, middle + 1, high, redLevel, cutoff);
+        } else {
+            ForkJoinTask<Node<E>> leftTask = ForkJoinTask.adapt(
+                () -> ParallelUtils.<E>buildFromSorted(elements, comparator, level + 1, low, middle - 1, redLevel, cutoff)
+            ).fork();
+            right = buildFromSorted(elements, comparator, level + 1, middle + 1, high, redLevel, cutoff);
+            left = leftTask.join();
+        }
+        return new ElementNode<>(value, level != redLevel, left, right);
+    }
+
+    private static boolean isSmall(Node<?> first, Node<?> second, int cutoff) {
+        return (long) Node.size(first) + Node.size(second) < cutoff;
+    }
+}
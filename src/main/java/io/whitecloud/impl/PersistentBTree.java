@@ -0,0 +1,411 @@
+package io.whitecloud.impl;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import com.google.common.annotations.VisibleForTesting;
+import io.whitecloud.PersistentTree;
+
+/**
+ * Persistent B-tree: an alternative to {@link PersistentRedBlackTree} with wide nodes for large trees.
+ * A node keeps up to {@code maxKeys} sorted elements in one array, so a lookup reads about
+ * log(n) / log(maxKeys) nodes instead of log2(n), and consecutive elements share cache lines.
+ * Changes copy the nodes on the path to the changed leaf, each of them whole, so they allocate more than
+ * in a red-black tree of the same size but touch fewer objects.
+ * Like {@link PersistentRedBlackTree}, the tree is ordered by a comparator or by the natural order of the elements.
+ */
+public class PersistentBTree<E> implements PersistentTree<E, PersistentBTree<E>> {
+    public static final int DEFAULT_MAX_KEYS = 32;
+
+    /**
+     * Node with its elements and, unless it is a leaf, one more child than elements.
+     * Arrays have exactly the needed length and are never changed once the node is part of a tree.
+     */
+    private static final class BNode {
+        final Object[] keys;
+        final BNode[] children;
+        final int size;
+
+        BNode(Object[] keys, BNode[] children) {
+            this.keys = keys;
+            this.children = children;
+            int size = keys.length;
+            if (children != null) {
+                for (BNode child : children) {
+                    size += child.size;
+                }
+            }
+            this.size = size;
+        }
+
+        boolean isLeaf() {
+            return children == null;
+        }
+    }
+
+    private final BNode root;
+    private final Comparator<? super E> comparator;
+    private final int maxKeys;
+    private final int minKeys;
+
+    /**
+     * Empty tree ordered by the natural order of the elements, with nodes of {@link #DEFAULT_MAX_KEYS}.
+     */
+    public PersistentBTree() {
+        this(PersistentRedBlackTree.naturalOrder(), DEFAULT_MAX_KEYS);
+    }
+
+    /**
+     * @param comparator order of the elements
+     * @param maxKeys maximum number of elements in a node, at least 3; other nodes than the root keep
+     *                at least half of it
+     */
+    public PersistentBTree(Comparator<? super E> comparator, int maxKeys) {
+        this(null, comparator, maxKeys);
+        if (maxKeys < 3) {
+            throw new IllegalArgumentException("Nodes must have room for at least 3 keys: " + maxKeys);
+        }
+    }
+
+    private PersistentBTree(BNode root, Comparator<? super E> comparator, int maxKeys) {
+        this.root = root;
+        this.comparator = comparator;
+        this.maxKeys = maxKeys;
+        this.minKeys = maxKeys / 2;
+    }
+
+    @Override
+    public PersistentBTree<E> add(E el) {
+        if (root == null) {
+            return new PersistentBTree<>(new BNode(new Object[] {el}, null), comparator, maxKeys);
+        }
+        BNode newRoot = insert(root, el);
+        if (newRoot == null) {
+            return null;
+        }
+        if (newRoot.keys.length > maxKeys) {
+            // the tree grows at the root only
+            int middle = newRoot.keys.length / 2;
+            newRoot = new BNode(new Object[] {newRoot.keys[middle]},
+                new BNode[] {leftHalf(newRoot, middle), rightHalf(newRoot, middle)});
+        }
+        return new PersistentBTree<>(newRoot, comparator, maxKeys);
+    }
+
+    @Override
+    public PersistentBTree<E> delete(E el) {
+        if (root == null) {
+            return null;
+        }
+        BNode newRoot = remove(root, el);
+        if (newRoot == root) {
+            return null;
+        }
+        if (newRoot.keys.length == 0) {
+            // the tree shrinks at the root only
+            newRoot = newRoot.isLeaf() ? null : newRoot.children[0];
+        }
+        return new PersistentBTree<>(newRoot, comparator, maxKeys);
+    }
+
+    @Override
+    public boolean contains(E el) {
+        BNode node = root;
+        while (node != null) {
+            int index = search(node, el);
+            if (index >= 0) {
+                return true;
+            }
+            node = node.isLeaf() ? null : node.children[-index - 1];
+        }
+        return false;
+    }
+
+    @Override
+    public int size() {
+        return root == null ? 0 : root.size;
+    }
+
+    public Comparator<? super E> comparator() {
+        return comparator;
+    }
+
+    /**
+     * Iterator over the elements. In-order gives them in ascending order; pre-order gives the elements of
+     * a node before the ones of its children, post-order after them.
+     */
+    @Override
+    public Iterator<E> iterator(Order order) {
+        return new OrderIterator(order);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("[");
+        Iterator<E> iterator = iterator(Order.InOrder);
+        while (iterator.hasNext()) {
+            builder.append(iterator.next());
+            if (iterator.hasNext()) {
+                builder.append(", ");
+            }
+        }
+        return builder.append(']').toString();
+    }
+
+    /**
+     * Check that all leaves are at the same depth, nodes other than the root have from minKeys to maxKeys
+     * elements, elements are sorted and sizes are correct.
+     */
+    @VisibleForTesting
+    public boolean checkIsBTree() {
+        return root == null || root.keys.length > 0 && checkIsBTree(root, null, null, true) != -1;
+    }
+
+    /**
+     * @return height of the subtree or -1 if it breaks an invariant
+     */
+    private int checkIsBTree(BNode node, Object low, Object high, boolean isRoot) {
+        if (node.keys.length > maxKeys || !isRoot && node.keys.length < minKeys) {
+            return -1;
+        }
+        for (int i = 0; i < node.keys.length; i++) {
+            Object previous = i == 0 ? low : node.keys[i - 1];
+            if (previous != null && compare(previous, node.keys[i]) >= 0) {
+                return -1;
+            }
+        }
+        if (high != null && node.keys.length > 0 && compare(node.keys[node.keys.length - 1], high) >= 0) {
+            return -1;
+        }
+        if (node.isLeaf()) {
+            return node.size == node.keys.length ? 0 : -1;
+        }
+        if (node.children.length != node.keys.length + 1) {
+            return -1;
+        }
+        int height = -1;
+        int size = node.keys.length;
+        for (int i = 0; i < node.children.length; i++) {
+            BNode child = node.children[i];
+            int childHeight = checkIsBTree(child, i == 0 ? low : node.keys[i - 1],
+                i == node.keys.length ? high : node.keys[i], false);
+            if (childHeight == -1 || height != -1 && childHeight != height) {
+                return -1;
+            }
+            height = childHeight;
+            size += child.size;
+        }
+        return node.size == size ? height + 1 : -1;
+    }
+
+    /**
+     * @return new subtree, with maxKeys + 1 elements in its root if the parent has to split it,
+     *         or null if the element is already in the tree
+     */
+    private BNode insert(BNode node, E el) {
+        int index = search(node, el);
+        if (index >= 0) {
+            return null;
+        }
+        int position = -index - 1;
+        if (node.isLeaf()) {
+            return new BNode(inserted(node.keys, position, el), null);
+        }
+        BNode child = insert(node.children[position], el);
+        if (child == null) {
+            return null;
+        }
+        if (child.keys.length <= maxKeys) {
+            BNode[] children = node.children.clone();
+            children[position] = child;
+            return new BNode(node.keys, children);
+        }
+        int middle = child.keys.length / 2;
+        BNode[] children = inserted(node.children, position + 1, rightHalf(child, middle));
+        children[position] = leftHalf(child, middle);
+        return new BNode(inserted(node.keys, position, child.keys[middle]), children);
+    }
+
+    /**
+     * @return new subtree, with minKeys - 1 elements in its root if the parent has to fix it,
+     *         or the same subtree if the element isn't in the tree
+     */
+    private BNode remove(BNode node, E el) {
+        int index = search(node, el);
+        if (node.isLeaf()) {
+            return index < 0 ? node : new BNode(removed(node.keys, index), null);
+        }
+        if (index < 0) {
+            int position = -index - 1;
+            BNode child = remove(node.children[position], el);
+            if (child == node.children[position]) {
+                return node;
+            }
+            return withChild(node, node.keys, position, child);
+        }
+        // replace the element with its predecessor, removed from the left subtree
+        BNode predecessorLeaf = node.children[index];
+        while (!predecessorLeaf.isLeaf()) {
+            predecessorLeaf = predecessorLeaf.children[predecessorLeaf.children.length - 1];
+        }
+        @SuppressWarnings("unchecked")
+        E predecessor = (E) predecessorLeaf.keys[predecessorLeaf.keys.length - 1];
+        Object[] keys = node.keys.clone();
+        keys[index] = predecessor;
+        return withChild(node, keys, index, remove(node.children[index], predecessor));
+    }
+
+    /**
+     * Copy of the node with the given elements and a new child, which may have one element too few.
+     */
+    private BNode withChild(BNode node, Object[] keys, int position, BNode child) {
+        BNode[] children = node.children.clone();
+        children[position] = child;
+        if (child.keys.length >= minKeys) {
+            return new BNode(keys, children);
+        }
+        if (position > 0 && children[position - 1].keys.length > minKeys) {
+            // move the last element of the left sibling up and the separator down
+            BNode left = children[position - 1];
+            int last = left.keys.length - 1;
+            children[position - 1] = new BNode(Arrays.copyOf(left.keys, last),
+                left.isLeaf() ? null : Arrays.copyOf(left.children, last + 1));
+            children[position] = new BNode(inserted(child.keys, 0, keys[position - 1]),
+                child.isLeaf() ? null : inserted(child.children, 0, left.children[last + 1]));
+            keys = keys == node.keys ? keys.clone() : keys;
+            keys[position - 1] = left.keys[last];
+            return new BNode(keys, children);
+        }
+        if (position < keys.length && children[position + 1].keys.length > minKeys) {
+            // move the first element of the right sibling up and the separator down
+            BNode right = children[position + 1];
+            children[position + 1] = new BNode(removed(right.keys, 0),
+                right.isLeaf() ? null : removed(right.children, 0));
+            children[position] = new BNode(inserted(child.keys, child.keys.length, keys[position]),
+                child.isLeaf() ? null : inserted(child.children, child.children.length, right.children[0]));
+            keys = keys == node.keys ? keys.clone() : keys;
+            keys[position] = right.keys[0];
+            return new BNode(keys, children);
+        }
+        // merge with a sibling and the separator between them
+        int separator = position > 0 ? position - 1 : position;
+        BNode left = children[separator];
+        BNode right = children[separator + 1];
+        Object[] mergedKeys = new Object[left.keys.length + 1 + right.keys.length];
+        System.arraycopy(left.keys, 0, mergedKeys, 0, left.keys.length);
+        mergedKeys[left.keys.length] = keys[separator];
+        System.arraycopy(right.keys, 0, mergedKeys, left.keys.length + 1, right.keys.length);
+        BNode[] mergedChildren = null;
+        if (!left.isLeaf()) {
+            mergedChildren = Arrays.copyOf(left.children, left.children.length + right.children.length);
+            System.arraycopy(right.children, 0, mergedChildren, left.children.length, right.children.length);
+        }
+        BNode[] newChildren = removed(children, separator + 1);
+        newChildren[separator] = new BNode(mergedKeys, mergedChildren);
+        return new BNode(removed(keys, separator), newChildren);
+    }
+
+    private BNode leftHalf(BNode node, int middle) {
+        return new BNode(Arrays.copyOf(node.keys, middle), node.isLeaf() ? null : Arrays.copyOf(node.children, middle + 1));
+    }
+
+    private BNode rightHalf(BNode node, int middle) {
+        return new BNode(Arrays.copyOfRange(node.keys, middle + 1, node.keys.length),
+            node.isLeaf() ? null : Arrays.copyOfRange(node.children, middle + 1, node.children.length));
+    }
+
+    /**
+     * @return index of the element in the node, or (-(insertion point) - 1) if it isn't there
+     */
+    @SuppressWarnings("unchecked")
+    private int search(BNode node, E el) {
+        return Arrays.binarySearch((E[]) node.keys, el, comparator);
+    }
+
+    @SuppressWarnings("unchecked")
+    private int compare(Object first, Object second) {
+        return comparator.compare((E) first, (E) second);
+    }
+
+    private static <T> T[] inserted(T[] array, int index, T value) {
+        T[] result = Arrays.copyOf(array, array.length + 1);
+        System.arraycopy(array, index, result, index + 1, array.length - index);
+        result[index] = value;
+        return result;
+    }
+
+    private static <T> T[] removed(T[] array, int index) {
+        T[] result = Arrays.copyOf(array, array.length - 1);
+        System.arraycopy(array, index + 1, result, index, array.length - index - 1);
+        return result;
+    }
+
+    /**
+     * Iterator over a stack of nodes with the step reached in each: a node of k elements has 2k + 1 steps,
+     * each visiting one of its children or returning one of its elements, in the order of the traversal.
+     */
+    private class OrderIterator implements Iterator<E> {
+        private final Order order;
+        private BNode[] nodes = new BNode[8];
+        private int[] steps = new int[8];
+        private int size;
+        // counted rather than looked ahead, as a tree with a null-tolerant comparator may hold null
+        private int remaining = PersistentBTree.this.size();
+
+        OrderIterator(Order order) {
+            this.order = order;
+            if (root != null) {
+                push(root);
+            }
+        }
+
+        public boolean hasNext() {
+            return remaining > 0;
+        }
+
+        public E next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            remaining--;
+            return advance();
+        }
+
+        @SuppressWarnings("unchecked")
+        private E advance() {
+            while (size > 0) {
+                BNode node = nodes[size - 1];
+                int step = steps[size - 1]++;
+                int keys = node.keys.length;
+                if (step == 2 * keys + 1) {
+                    nodes[--size] = null;
+                    continue;
+                }
+                int key = switch (order) {
+                    case InOrder -> step % 2 == 1 ? step / 2 : -1 - step / 2;
+                    case PreOrder -> step < keys ? step : -1 - (step - keys);
+                    case PostOrder -> step > keys ? step - keys - 1 : -1 - step;
+                };
+                if (key >= 0) {
+                    return (E) node.keys[key];
+                }
+                if (!node.isLeaf()) {
+                    push(node.children[-1 - key]);
+                }
+            }
+            throw new IllegalStateException("Tree has fewer elements than its size");
+        }
+
+        private void push(BNode node) {
+            if (size == nodes.length) {
+                nodes = Arrays.copyOf(nodes, size * 2);
+                steps = Arrays.copyOf(steps, size * 2);
+            }
+            nodes[size] = node;
+            steps[size] = 0;
+            size++;
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package io.whitecloud.impl;
+
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.PrimitiveIterator;
+import java.util.function.IntConsumer;
+
+import static io.whitecloud.impl.TreeUtils.*;
+
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * Persistent red-black tree of primitive ints.
+ * Keys are stored in the nodes without boxing and compared directly, and no operation of this class boxes them.
+ * Rebalancing is shared with {@link PersistentRedBlackTree}.
+ */
+public class PersistentIntRedBlackTree {
+    private final Node<Integer> root;
+
+    public PersistentIntRedBlackTree() {
+        this.root = null;
+    }
+
+    private PersistentIntRedBlackTree(Node<Integer> root) {
+        this.root = root;
+    }
+
+    /**
+     * Add new key to the tree.
+     * @param key key to add
+     * @return tree with added key or null if the key already existed
+     */
+    public PersistentIntRedBlackTree add(int key) {
+        NodePath<Integer> path = NodePath.acquire();
+        try {
+            Node.Direction dir = null;
+            Node<Integer> current = root;
+            while (current != null) {
+                int currentKey = IntNode.key(current);
+                if (key == currentKey) {
+                    return null;
+                }
+                path.push(current, dir);
+                dir = key < currentKey ? Node.Direction.LEFT : Node.Direction.RIGHT;
+                current = current.getChild(dir);
+            }
+            if (path.isEmpty()) {
+                return new PersistentIntRedBlackTree(new IntNode(key, true, null, null));
+            }
+            return new PersistentIntRedBlackTree(insert(path, new IntNode(key, false, null, null), dir, null));
+        } finally {
+            path.release();
+        }
+    }
+
+    /**
+     * Delete a key from the tree.
+     * @param key key to delete
+     * @return tree with deleted key or null if the key didn't exist
+     */
+    public PersistentIntRedBlackTree delete(int key) {
+        NodePath<Integer> path = NodePath.acquire();
+        try {
+            Node.Direction dir = null;
+            Node<Integer> current = root;
+            while (current != null) {
+                int currentKey = IntNode.key(current);
+                if (key == currentKey) {
+                    return new PersistentIntRedBlackTree(remove(path, current, dir, null));
+                }
+                path.push(current, dir);
+                dir = key < currentKey ? Node.Direction.LEFT : Node.Direction.RIGHT;
+                current = current.getChild(dir);
+            }
+            return null;
+        } finally {
+            path.release();
+        }
+    }
+
+    public boolean contains(int key) {
+        Node<Integer> current = root;
+        while (current != null) {
+            int currentKey = IntNode.key(current);
+            if (key == currentKey) {
+                return true;
+            }
+            current = key < currentKey ? current.left() : current.right();
+        }
+        return false;
+    }
+
+    public int size() {
+        return Node.size(root);
+    }
+
+    /**
+     * Key at the given position in ascending order, in O(log n).
+     * @throws IndexOutOfBoundsException if index is out of range
+     */
+    public int get(int index) {
+        Objects.checkIndex(index, size());
+        return IntNode.key(select(root, index));
+    }
+
+    /**
+     * @return number of keys less than the given one
+     */
+    public int rank(int key) {
+        int rank = 0;
+        Node<Integer> current = root;
+        while (current != null) {
+            int currentKey = IntNode.key(current);
+            if (key <= currentKey) {
+                if (key == currentKey) {
+                    return rank + Node.size(current.left());
+                }
+                current = current.left();
+            } else {
+                rank += Node.size(current.left()) + 1;
+                current = current.right();
+            }
+        }
+        return rank;
+    }
+
+    /**
+     * @return iterator over all keys in ascending order
+     */
+    public PrimitiveIterator.OfInt iterator() {
+        return iterator(Integer.MIN_VALUE, true, Integer.MAX_VALUE, true);
+    }
+
+    /**
+     * Lazy iterator over the keys between the given bounds in ascending order, in O(log n + k) for k keys.
+     * @param from lower bound
+     * @param fromInclusive if the lower bound itself is included
+     * @param to upper bound
+     * @param toInclusive if the upper bound itself is included
+     */
+    public PrimitiveIterator.OfInt iterator(int from, boolean fromInclusive, int to, boolean toInclusive) {
+        return new RangeIterator(from, fromInclusive, to, toInclusive);
+    }
+
+    public void forEach(IntConsumer action) {
+        iterator().forEachRemaining(action);
+    }
+
+    /**
+     * @return all keys in ascending order
+     */
+    public int[] toArray() {
+        int[] array = new int[size()];
+        PrimitiveIterator.OfInt iterator = iterator();
+        for (int i = 0; i < array.length; i++) {
+            array[i] = iterator.nextInt();
+        }
+        return array;
+    }
+
+    @Override
+    public String toString() {
+        return buildString(root, new StringBuilder()).toString();
+    }
+
+    @VisibleForTesting
+    public boolean checkIsRedBlackTree() {
+        if (!isBlack(root)) {
+            return false;
+        }
+        return TreeUtils.checkIsRedBlackTree(root, 0) != -1;
+    }
+
+    private class RangeIterator implements PrimitiveIterator.OfInt {
+        private final InOrderStack<Integer> stack = new InOrderStack<>(root);
+        private final int to;
+        private final boolean toInclusive;
+
+        RangeIterator(int from, boolean fromInclusive, int to, boolean toInclusive) {
+            this.to = to;
+            this.toInclusive = toInclusive;
+
+            Node<Integer> current = root;
+            while (current != null) {
+                int currentKey = IntNode.key(current);
+                if (from < currentKey || from == currentKey && fromInclusive) {
+                    stack.push(current);
+                    if (from == currentKey) {
+                        break;
+                    }
+                    current = current.left();
+                } else {
+                    current = current.right();
+                }
+            }
+        }
+
+        public boolean hasNext() {
+            if (stack.isEmpty()) {
+                return false;
+            }
+            int next = IntNode.key(stack.peek());
+            return next < to || next == to && toInclusive;
+        }
+
+        public int nextInt() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return IntNode.key(stack.pop());
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package io.whitecloud.impl;
+
+import java.util.AbstractMap;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.StringJoiner;
+import java.util.function.BiFunction;
+
+import static io.whitecloud.impl.TreeUtils.*;
+
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * Persistent sorted map on the same red-black tree as {@link PersistentRedBlackTree}, ordered by a comparator
+ * of the keys or by their natural order.
+ * Keys and values are stored directly in the nodes, so lookups compare raw keys.
+ * Changing the value of an existing key copies one path without rebalancing.
+ * Null values are not allowed, so {@link #get} returns null only for missing keys.
+ * Operations that don't change the map return the same map.
+ */
+public class PersistentRedBlackMap<K, V> implements Iterable<Map.Entry<K, V>> {
+    private final Node<K> root;
+    private final Comparator<? super K> comparator;
+
+    /**
+     * Empty map ordered by the natural order of the keys, which must be {@link Comparable}.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public PersistentRedBlackMap() {
+        this(null, (Comparator) Comparator.naturalOrder());
+    }
+
+    /**
+     * Empty map ordered by the comparator of the keys.
+     */
+    public PersistentRedBlackMap(Comparator<? super K> comparator) {
+        this(null, Objects.requireNonNull(comparator));
+    }
+
+    private PersistentRedBlackMap(Node<K> root, Comparator<? super K> comparator) {
+        this.root = root;
+        this.comparator = comparator;
+    }
+
+    /**
+     * @param key key to look for
+     * @return value of the key or null if the key isn't in the map
+     */
+    public V get(K key) {
+        MapNode<K, V> node = find(key);
+        return node == null ? null : node.mapValue();
+    }
+
+    public boolean containsKey(K key) {
+        return find(key) != null;
+    }
+
+    public int size() {
+        return Node.size(root);
+    }
+
+    /**
+     * Associate the value with the key.
+     * @param key key to add or update
+     * @param value new value of the key
+     * @return map with the value, or this map if the key already has exactly this value
+     */
+    public PersistentRedBlackMap<K, V> put(K key, V value) {
+        Objects.requireNonNull(value);
+        return withRoot(update(root, key, comparator, node -> {
+            if (node == null) {
+                return new MapNode<>(key, value, false, null, null, null);
+            }
+            return withMapValue(node, value);
+        }, null));
+    }
+
+    /**
+     * Change the value of the key only if the key is already in the map.
+     * @return map with the value, or this map if the key is missing or already has exactly this value
+     */
+    public PersistentRedBlackMap<K, V> replace(K key, V value) {
+        Objects.requireNonNull(value);
+        return withRoot(update(root, key, comparator, node -> node == null ? null : withMapValue(node, value), null));
+    }
+
+    /**
+     * Remove the key with its value.
+     * @return map without the key, or this map if the key is missing
+     */
+    public PersistentRedBlackMap<K, V> remove(K key) {
+        return withRoot(TreeUtils.remove(root, key, comparator, null));
+    }
+
+    /**
+     * Compute a new value of the key from the current one with a single descent.
+     * @param function gets the key and its current value or null if the key is missing,
+     *                 returns the new value or null to remove the key
+     * @return map with the computed value, or this map if nothing changed
+     */
+    @SuppressWarnings("unchecked")
+    public PersistentRedBlackMap<K, V> compute(K key, BiFunction<? super K, ? super V, ? extends V> function) {
+        return withRoot(update(root, key, comparator, node -> {
+            V oldValue = node == null ? null : ((MapNode<K, V>) node).mapValue();
+            V newValue = function.apply(key, oldValue);
+            if (newValue == null) {
+                return null;
+            }
+            if (node == null) {
+                return new MapNode<>(key, newValue, false, null, null, null);
+            }
+            return withMapValue(node, newValue);
+        }, null));
+    }
+
+    /**
+     * @return iterator over the entries in ascending order of keys
+     */
+    @Override
+    public Iterator<Map.Entry<K, V>> iterator() {
+        return new EntryIterator();
+    }
+
+    @Override
+    public String toString() {
+        StringJoiner joiner = new StringJoiner(", ", "{", "}");
+        for (Map.Entry<K, V> entry : this) {
+            joiner.add(entry.getKey() + "=" + entry.getValue());
+        }
+        return joiner.toString();
+    }
+
+    @VisibleForTesting
+    public boolean checkIsRedBlackTree() {
+        if (!isBlack(root)) {
+            return false;
+        }
+        return TreeUtils.checkIsRedBlackTree(root, 0) != -1;
+    }
+
+    @SuppressWarnings("unchecked")
+    private MapNode<K, V> find(K key) {
+        Node<K> current = root;
+        while (current != null) {
+            int comparisonResult = comparator.compare(key, current.value());
+            if (comparisonResult == 0) {
+                return (MapNode<K, V>) current;
+            }
+            current = comparisonResult < 0 ? current.left() : current.right();
+        }
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <K, V> Node<K> withMapValue(Node<K> node, V value) {
+        MapNode<K, V> mapNode = (MapNode<K, V>) node;
+        return mapNode.mapValue() == value ? node : mapNode.withMapValue(value, null);
+    }
+
+    private PersistentRedBlackMap<K, V> withRoot(Node<K> newRoot) {
+        return newRoot == root ? this : new PersistentRedBlackMap<>(newRoot, comparator);
+    }
+
+    private class EntryIterator implements Iterator<Map.Entry<K, V>> {
+        private final Node<K>[] stack;
+        private int size;
+
+        @SuppressWarnings("unchecked")
+        EntryIterator() {
+            this.stack = (Node<K>[]) new Node<?>[2 * Node.blackHeight(root) + 1];
+            moveLeft(root);
+        }
+
+        public boolean hasNext() {
+            return size > 0;
+        }
+
+        @SuppressWarnings("unchecked")
+        public Map.Entry<K, V> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            MapNode<K, V> current = (MapNode<K, V>) stack[--size];
+            stack[size] = null;
+            moveLeft(current.right());
+            return new AbstractMap.SimpleImmutableEntry<>(current.key(), current.mapValue());
+        }
+
+        private void moveLeft(Node<K> current) {
+            while (current != null) {
+                stack[size++] = current;
+                current = current.left();
+            }
+        }
+    }
+}
@@ -1,73 +1,566 @@
 package io.whitecloud.impl;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.List;
 import java.util.NoSuchElementException;
-import java.util.Stack;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import static io.whitecloud.impl.TreeUtils.*;
 
 import com.google.common.annotations.VisibleForTesting;
 import io.whitecloud.PersistentTree;
 
-public class PersistentRedBlackTree<E extends Comparable<E>> implements PersistentTree<E, PersistentRedBlackTree<E>> {
+/**
+ * Persistent red-black tree ordered by a comparator, or by the natural order of the elements if none is given.
+ * Elements of a tree without a comparator must be {@link Comparable}.
+ */
+public class PersistentRedBlackTree<E> implements PersistentTree<E, PersistentRedBlackTree<E>> {
+    /**
+     * Element added to or removed from a tree.
+     * @param element element that changed
+     * @param added if the element is only in the newer tree, otherwise it is only in the older one
+     */
+    public record Change<E>(E element, boolean added) {}
+
     private final Node<E> root;
+    private final Comparator<? super E> comparator;
 
+    /**
+     * Empty tree ordered by the natural order of the elements.
+     */
     public PersistentRedBlackTree() {
-        this.root = null;
+        this(null, naturalOrder());
+    }
+
+    /**
+     * Empty tree ordered by the comparator.
+     * @param comparator order of the elements
+     */
+    public PersistentRedBlackTree(Comparator<? super E> comparator) {
+        this(null, Objects.requireNonNull(comparator));
     }
 
-    private PersistentRedBlackTree(Node<E> root) {
+    PersistentRedBlackTree(Node<E> root, Comparator<? super E> comparator) {
         this.root = root;
+        this.comparator = comparator;
+    }
+
+    /**
+     * Build a tree from elements in strictly increasing order in O(n) time,
+     * without creating intermediate versions.
+     * @param elements sorted elements without duplicates
+     * @return tree with all elements
+     * @throws IllegalArgumentException if elements are not strictly increasing
+     */
+    public static <E extends Comparable<E>> PersistentRedBlackTree<E> fromSorted(Iterable<? extends E> elements) {
+        return fromSorted(elements, naturalOrder());
+    }
+
+    /**
+     * Build a tree ordered by the comparator from elements in strictly increasing order of it in O(n) time.
+     * @see #fromSorted(Iterable)
+     */
+    public static <E> PersistentRedBlackTree<E> fromSorted(Iterable<? extends E> elements,
+                                                           Comparator<? super E> comparator)
+    {
+        Collection<? extends E> collection = elements instanceof Collection<? extends E> c ? c : toList(elements);
+        Node<E> root = buildFromSorted(collection.iterator(), collection.size(), comparator);
+        return new PersistentRedBlackTree<>(root, comparator);
+    }
+
+    /**
+     * Build a tree from elements in strictly increasing order in O(n) time.
+     * @see #fromSorted(Iterable)
+     */
+    public static <E extends Comparable<E>> PersistentRedBlackTree<E> fromSorted(E[] elements) {
+        return fromSorted(Arrays.asList(elements));
+    }
+
+    /**
+     * Build a tree from elements in any order. Elements are sorted first, duplicates are dropped,
+     * then the tree is built in O(n).
+     * @param elements elements to add
+     * @return tree with all elements
+     */
+    public static <E extends Comparable<E>> PersistentRedBlackTree<E> fromUnsorted(Iterable<? extends E> elements) {
+        return fromUnsorted(elements, naturalOrder());
+    }
+
+    /**
+     * Build a tree ordered by the comparator from elements in any order.
+     * @see #fromUnsorted(Iterable)
+     */
+    public static <E> PersistentRedBlackTree<E> fromUnsorted(Iterable<? extends E> elements,
+                                                             Comparator<? super E> comparator)
+    {
+        List<E> sorted = toList(elements);
+        sorted.sort(comparator);
+        return fromSorted(distinct(sorted, comparator), comparator);
+    }
+
+    /**
+     * Parallel version of {@link #fromSorted(Iterable)}: both halves of every subtree are built in parallel.
+     * @param elements sorted elements without duplicates
+     * @param settings pool and sequential cutoff
+     * @return tree with all elements
+     * @throws IllegalArgumentException if elements are not strictly increasing
+     */
+    public static <E extends Comparable<E>> PersistentRedBlackTree<E> fromSorted(List<? extends E> elements,
+                                                                              ParallelSettings settings)
+    {
+        return fromSorted(elements, naturalOrder(), settings);
+    }
+
+    /**
+     * Parallel version of {@link #fromSorted(Iterable, Comparator)}.
+     * @see #fromSorted(List, ParallelSettings)
+     */
+    public static <E> PersistentRedBlackTree<E> fromSorted(List<? extends E> elements, Comparator<? super E> comparator,
+                                                           ParallelSettings settings)
+    {
+        List<? extends E> list = elements instanceof RandomAccess ? elements : new ArrayList<>(elements);
+        Node<E> root = settings.pool().invoke(ForkJoinTask.adapt(
+            () -> ParallelUtils.<E>buildFromSorted(list, comparator, settings.sequentialCutoff())
+        ));
+        return new PersistentRedBlackTree<>(root, comparator);
+    }
+
+    /**
+     * Parallel version of {@link #fromUnsorted(Iterable)}: elements are sorted and the tree is built in parallel.
+     * @param elements elements to add
+     * @param settings pool and sequential cutoff
+     * @return tree with all elements
+     */
+    public static <E extends Comparable<E>> PersistentRedBlackTree<E> fromUnsorted(Iterable<? extends E> elements,
+                                                                                ParallelSettings settings)
+    {
+        return fromUnsorted(elements, naturalOrder(), settings);
+    }
+
+    /**
+     * Parallel version of {@link #fromUnsorted(Iterable, Comparator)}.
+     * @see #fromUnsorted(Iterable, ParallelSettings)
+     */
+    @SuppressWarnings("unchecked")
+    public static <E> PersistentRedBlackTree<E> fromUnsorted(Iterable<? extends E> elements,
+                                                             Comparator<? super E> comparator,
+                                                             ParallelSettings settings)
+    {
+        E[] array = (E[]) toList(elements).toArray();
+        settings.pool().invoke(ForkJoinTask.adapt(() -> Arrays.parallelSort(array, comparator)));
+        return fromSorted(distinct(Arrays.asList(array), comparator), comparator, settings);
+    }
+
+    Node<E> root() {
+        return root;
+    }
+
+    /**
+     * @return comparator ordering the elements of this tree
+     */
+    public Comparator<? super E> comparator() {
+        return comparator;
     }
 
     @Override
     public PersistentRedBlackTree<E> add(E el) {
-        if (contains(el)) {
+        Node<E> newRoot = insert(root, el, comparator, null);
+        if (newRoot == root) {
             return null;
         }
+        return new PersistentRedBlackTree<>(newRoot, comparator);
+    }
 
+    @Override
+    public PersistentRedBlackTree<E> delete(E el) {
+        Node<E> newRoot = remove(root, el, comparator, null);
+        if (newRoot == root) {
+            return null;
+        }
+        return new PersistentRedBlackTree<>(newRoot, comparator);
+    }
+
+    @Override
+    public boolean contains(E el) {
         if (root == null) {
-            Node<E> newNode = new Node<>(el, true, null, null);
-            return new PersistentRedBlackTree<>(newNode);
+            return false;
         }
+        return traverse(root, el, comparator, node -> node, __ -> {}) != null;
+    }
 
-        Node<E> newNode = new Node<>(el, false, null, null);
-        LinkedList<Node<E>> parents = new LinkedList<>();
-        traverse(root, el, node -> node, parents::add);
+    @Override
+    public int size() {
+        return Node.size(root);
+    }
 
-        Node<E> parent = parents.getLast();
-        Node.Direction dir = el.compareTo(parent.value()) < 0 ? Node.Direction.LEFT : Node.Direction.RIGHT;
+    /**
+     * Element at the given position in sorted order, in O(log n).
+     * @param index index of the element, from 0 to size() - 1
+     * @return element with exactly index smaller elements
+     * @throws IndexOutOfBoundsException if index is out of range
+     */
+    public E get(int index) {
+        Objects.checkIndex(index, size());
+        return select(root, index).value();
+    }
 
-        Node<E> newRoot = insert(parents, newNode, dir);
-        return new PersistentRedBlackTree<>(newRoot);
+    /**
+     * Position of the element in sorted order, in O(log n).
+     * The element doesn't have to be in the tree.
+     * @param el element to look for
+     * @return number of elements less than el
+     */
+    public int rank(E el) {
+        return TreeUtils.rank(root, el, comparator);
+    }
+
+    /**
+     * @return the greatest element less than or equal to el, or null if there is none
+     */
+    public E floor(E el) {
+        return valueOf(closest(root, el, comparator, false, true));
+    }
+
+    /**
+     * @return the least element greater than or equal to el, or null if there is none
+     */
+    public E ceiling(E el) {
+        return valueOf(closest(root, el, comparator, true, true));
+    }
+
+    /**
+     * @return the least element strictly greater than el, or null if there is none
+     */
+    public E higher(E el) {
+        return valueOf(closest(root, el, comparator, true, false));
+    }
+
+    /**
+     * @return the greatest element strictly less than el, or null if there is none
+     */
+    public E lower(E el) {
+        return valueOf(closest(root, el, comparator, false, false));
+    }
+
+    /**
+     * Tree with the elements less than (or equal to, if inclusive) the given one, in O(log n).
+     * The result is an independent version sharing most nodes with this tree.
+     * @param to upper bound
+     * @param inclusive if the bound itself is included
+     * @return tree with elements below the bound
+     */
+    public PersistentRedBlackTree<E> headSet(E to, boolean inclusive) {
+        return new PersistentRedBlackTree<>(blacken(JoinUtils.head(root, to, comparator, inclusive)), comparator);
+    }
+
+    /**
+     * Tree with the elements greater than (or equal to, if inclusive) the given one, in O(log n).
+     * The result is an independent version sharing most nodes with this tree.
+     * @param from lower bound
+     * @param inclusive if the bound itself is included
+     * @return tree with elements above the bound
+     */
+    public PersistentRedBlackTree<E> tailSet(E from, boolean inclusive) {
+        return new PersistentRedBlackTree<>(blacken(JoinUtils.tail(root, from, comparator, inclusive)), comparator);
+    }
+
+    /**
+     * Tree with the elements between the given ones, in O(log n).
+     * The result is an independent version sharing most nodes with this tree.
+     * @param from lower bound
+     * @param fromInclusive if the lower bound itself is included
+     * @param to upper bound
+     * @param toInclusive if the upper bound itself is included
+     * @return tree with elements in the range
+     * @throws IllegalArgumentException if from is greater than to
+     */
+    public PersistentRedBlackTree<E> subSet(E from, boolean fromInclusive, E to, boolean toInclusive) {
+        if (comparator.compare(from, to) > 0) {
+            throw new IllegalArgumentException("Lower bound is greater than upper bound: " + from + ", " + to);
+        }
+        Node<E> tail = JoinUtils.tail(root, from, comparator, fromInclusive);
+        return new PersistentRedBlackTree<>(blacken(JoinUtils.head(tail, to, comparator, toInclusive)), comparator);
+    }
+
+    /**
+     * Union of two trees in O(m log(n / m + 1)) for trees of sizes m <= n.
+     * Subtrees that don't need changes are shared with both trees.
+     * @param other tree to merge with this one
+     * @return tree with elements of both trees; for equal elements the ones of other are kept
+     */
+    public PersistentRedBlackTree<E> union(PersistentRedBlackTree<E> other) {
+        requireSameOrder(other);
+        return new PersistentRedBlackTree<>(blacken(JoinUtils.union(root, other.root, comparator)), comparator);
+    }
+
+    /**
+     * Intersection of two trees in O(m log(n / m + 1)) for trees of sizes m <= n.
+     * @param other tree to intersect with this one
+     * @return tree with elements present in both trees; the ones of other are kept
+     */
+    public PersistentRedBlackTree<E> intersection(PersistentRedBlackTree<E> other) {
+        requireSameOrder(other);
+        return new PersistentRedBlackTree<>(blacken(JoinUtils.intersection(root, other.root, comparator)), comparator);
+    }
+
+    /**
+     * Difference of two trees in O(m log(n / m + 1)) for trees of sizes m <= n.
+     * @param other tree with elements to remove
+     * @return tree with elements of this tree that are not in other
+     */
+    public PersistentRedBlackTree<E> difference(PersistentRedBlackTree<E> other) {
+        requireSameOrder(other);
+        return new PersistentRedBlackTree<>(blacken(JoinUtils.difference(root, other.root, comparator)), comparator);
+    }
+
+    /**
+     * Parallel version of {@link #union(PersistentRedBlackTree)}.
+     * @param other tree to merge with this one
+     * @param settings pool and sequential cutoff
+     * @return tree with elements of both trees; for equal elements the ones of other are kept
+     */
+    public PersistentRedBlackTree<E> union(PersistentRedBlackTree<E> other, ParallelSettings settings) {
+        requireSameOrder(other);
+        Node<E> newRoot = settings.pool().invoke(ForkJoinTask.adapt(
+            () -> ParallelUtils.union(root, other.root, comparator, settings.sequentialCutoff())
+        ));
+        return new PersistentRedBlackTree<>(blacken(newRoot), comparator);
+    }
+
+    /**
+     * Parallel version of {@link #intersection(PersistentRedBlackTree)}.
+     * @param other tree to intersect with this one
+     * @param settings pool and sequential cutoff
+     * @return tree with elements present in both trees; the ones of other are kept
+     */
+    public PersistentRedBlackTree<E> intersection(PersistentRedBlackTree<E> other, ParallelSettings settings) {
+        requireSameOrder(other);
+        Node<E> newRoot = settings.pool().invoke(ForkJoinTask.adapt(
+            () -> ParallelUtils.intersection(root, other.root, comparator, settings.sequentialCutoff())
+        ));
+        return new PersistentRedBlackTree<>(blacken(newRoot), comparator);
+    }
+
+    /**
+     * Parallel version of {@link #difference(PersistentRedBlackTree)}.
+     * @param other tree with elements to remove
+     * @param settings pool and sequential cutoff
+     * @return tree with elements of this tree that are not in other
+     */
+    public PersistentRedBlackTree<E> difference(PersistentRedBlackTree<E> other, ParallelSettings settings) {
+        requireSameOrder(other);
+        Node<E> newRoot = settings.pool().invoke(ForkJoinTask.adapt(
+            () -> ParallelUtils.difference(root, other.root, comparator, settings.sequentialCutoff())
+        ));
+        return new PersistentRedBlackTree<>(blacken(newRoot), comparator);
+    }
+
+    /**
+     * Start a batch of changes on this version.
+     * The editor changes in place only nodes it has created itself, so this tree and all other versions
+     * remain the same.
+     * @return mutable editor starting from this version
+     */
+    public TransientRedBlackTree<E> asTransient() {
+        return new TransientRedBlackTree<>(root, comparator);
     }
 
     @Override
-    public PersistentRedBlackTree<E> delete(E el) {
-        if (!contains(el)) {
-            return null;
+    public Iterator<E> iterator(Order order) {
+        return new OrderIterator(order, false);
+    }
+
+    /**
+     * @return iterator over all elements in descending order
+     */
+    public Iterator<E> descendingIterator() {
+        return new OrderIterator(Order.InOrder, true);
+    }
+
+    /**
+     * Perform the action for every element in ascending order.
+     * Faster than an iterator: the traversal keeps its state on the call stack.
+     * @param action action for each element
+     */
+    public void forEach(Consumer<? super E> action) {
+        forEach(root, action);
+    }
+
+    private static <E> void forEach(Node<E> node, Consumer<? super E> action) {
+        while (node != null) {
+            forEach(node.left(), action);
+            action.accept(node.value());
+            node = node.right();
         }
+    }
+
+    /**
+     * Lazy in-order iterator over the elements between the given bounds.
+     * It starts with a descent to the lower bound, so iterating k elements takes O(log n + k).
+     * @param from lower bound or null for no bound
+     * @param fromInclusive if the lower bound itself is included
+     * @param to upper bound or null for no bound
+     * @param toInclusive if the upper bound itself is included
+     * @return iterator over the range in ascending order
+     */
+    public Iterator<E> iterator(E from, boolean fromInclusive, E to, boolean toInclusive) {
+        return new RangeIterator(from, fromInclusive, to, toInclusive);
+    }
+
+    /**
+     * Lazy stream of the differences from this tree to a newer one, in ascending order of the elements.
+     * Subtrees shared by both trees are skipped without being visited, so for versions of one lineage
+     * that differ in d elements it takes O(d log n) rather than O(n). Elements equal by the comparator
+     * are considered unchanged.
+     * @param newer tree ordered by the same comparator
+     * @return changes that turn this tree into the newer one
+     */
+    public Stream<Change<E>> diff(PersistentRedBlackTree<E> newer) {
+        requireSameOrder(newer);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(
+            new DiffIterator<>(root, newer.root, comparator), Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
 
-        LinkedList<Node.NodeWithDirection<E>> parents = new LinkedList<>();
-        Node<E> newRoot = traverse(root, el, node -> remove(parents, node),
-            node -> parents.add(createNodeWithDirection(parents, node))
-        );
+    /**
+     * Report the differences from this tree to a newer one in ascending order, like {@link #diff(PersistentRedBlackTree)}.
+     * @param newer tree ordered by the same comparator
+     * @param removed action for the elements only in this tree
+     * @param added action for the elements only in the newer tree
+     */
+    public void diff(PersistentRedBlackTree<E> newer, Consumer<? super E> removed, Consumer<? super E> added) {
+        requireSameOrder(newer);
+        DiffIterator<E> iterator = new DiffIterator<>(root, newer.root, comparator);
+        while (iterator.hasNext()) {
+            Change<E> change = iterator.next();
+            if (change.added()) {
+                added.accept(change.element());
+            } else {
+                removed.accept(change.element());
+            }
+        }
+    }
+
+    /**
+     * Spliterator over all elements in ascending order. It knows the exact size of every part and splits
+     * in halves by position, starting each part with a descent from the root in O(log n).
+     */
+    public Spliterator<E> spliterator() {
+        return new TreeSpliterator(0, size());
+    }
 
-        return new PersistentRedBlackTree<>(newRoot);
+    public Stream<E> stream() {
+        return StreamSupport.stream(spliterator(), false);
     }
 
+    public Stream<E> parallelStream() {
+        return StreamSupport.stream(spliterator(), true);
+    }
+
+    /**
+     * Stream of the elements between the given bounds in ascending order; it splits as well as the whole tree.
+     * @param from lower bound or null for no bound
+     * @param fromInclusive if the lower bound itself is included
+     * @param to upper bound or null for no bound
+     * @param toInclusive if the upper bound itself is included
+     * @param parallel if the stream is parallel
+     */
+    public Stream<E> stream(E from, boolean fromInclusive, E to, boolean toInclusive, boolean parallel) {
+        int start = from == null ? 0 : rank(from) + (!fromInclusive && contains(from) ? 1 : 0);
+        int end = to == null ? size() : rank(to) + (toInclusive && contains(to) ? 1 : 0);
+        return StreamSupport.stream(new TreeSpliterator(start, Math.max(start, end)), parallel);
+    }
+
+    /**
+     * Drop duplicates from a sorted list in place.
+     * @return prefix of the list with distinct elements
+     */
+    private static <E> List<E> distinct(List<E> sorted, Comparator<? super E> comparator) {
+        int size = 0;
+        for (E el : sorted) {
+            if (size == 0 || comparator.compare(sorted.get(size - 1), el) != 0) {
+                sorted.set(size++, el);
+            }
+        }
+        return sorted.subList(0, size);
+    }
+
+    private static <E> List<E> toList(Iterable<? extends E> elements) {
+        List<E> list = new ArrayList<>();
+        elements.forEach(list::add);
+        return list;
+    }
+
+    /**
+     * Natural order for trees of comparable elements; elements that are not comparable fail on the first comparison.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    static <E> Comparator<? super E> naturalOrder() {
+        return (Comparator) Comparator.naturalOrder();
+    }
+
+    private void requireSameOrder(PersistentRedBlackTree<E> other) {
+        if (!comparator.equals(other.comparator)) {
+            throw new IllegalArgumentException("Trees are ordered by different comparators");
+        }
+    }
+
+    private static <E> E valueOf(Node<E> node) {
+        return node == null ? null : node.value();
+    }
+
+    /**
+     * Trees are equal if they have the same elements, like sets: trees of the same comparator are compared
+     * by {@link #diff}, which skips shared subtrees and stops at the first difference, so versions of one
+     * lineage are compared without visiting the nodes they share.
+     */
     @Override
-    public boolean contains(E el) {
-        if (root == null) {
+    public boolean equals(Object o) {
+        if (o == this) {
+            return true;
+        }
+        if (!(o instanceof PersistentRedBlackTree<?> other) || size() != other.size()) {
+            return false;
+        }
+        if (root == other.root) {
+            return true;
+        }
+        try {
+            if (comparator.equals(other.comparator)) {
+                @SuppressWarnings("unchecked")
+                Node<E> otherRoot = (Node<E>) other.root;
+                return !new DiffIterator<>(root, otherRoot, comparator).hasNext();
+            }
+            for (Iterator<?> iterator = other.iterator(Order.InOrder); iterator.hasNext(); ) {
+                @SuppressWarnings("unchecked")
+                E el = (E) iterator.next();
+                if (!contains(el)) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (ClassCastException e) {
+            // elements of other types are never equal
             return false;
         }
-        return traverse(root, el, node -> node, __ -> {}) != null;
     }
 
+    /**
+     * Sum of hash codes of the elements, as for sets, in O(1): every node caches the sum of its subtree.
+     */
     @Override
-    public Iterator<E> iterator(Order order) {
-        return new OrderIterator(order);
+    public int hashCode() {
+        return Node.hash(root);
     }
 
     @Override
@@ -83,65 +576,235 @@ public class PersistentRedBlackTree<E extends Comparable<E>> implements Persiste
         return TreeUtils.checkIsRedBlackTree(root, 0) != -1;
     }
 
+    /**
+     * Iterator for all orders over an array stack holding at most one path of the tree.
+     * Pre-order keeps the right children still to visit, in-order and descending order the ancestors still
+     * to return, and post-order the path to the current node, whose parent is then the top of the stack.
+     */
     private class OrderIterator implements Iterator<E> {
-        private final Stack<Node<E>> stack = new Stack<>();
-        private final Stack<Boolean> visitedRight = new Stack<>();
+        private final Node<E>[] stack;
+        private int size;
         private final Order order;
+        private final boolean descending;
 
-        OrderIterator(Order order) {
+        @SuppressWarnings("unchecked")
+        OrderIterator(Order order, boolean descending) {
+            // a path of a red-black tree has at most twice as many nodes as the black height of the root
+            this.stack = (Node<E>[]) new Node<?>[2 * Node.blackHeight(root) + 1];
             this.order = order;
+            this.descending = descending;
             switch (order) {
-                case InOrder, PostOrder -> moveLeft(root);
-                case PreOrder -> {
-                    if (root != null) {
-                        stack.push(root);
-                    }
-                }
+                case PreOrder -> push(root);
+                case InOrder -> pushSpine(root);
+                case PostOrder -> pushFirstLeaf(root);
             }
         }
 
         public boolean hasNext() {
-            return !stack.isEmpty();
+            return size > 0;
         }
 
         public E next() {
             if (!hasNext()) {
                 throw new NoSuchElementException();
             }
-
-            Node<E> current = stack.pop();
-
+            Node<E> current = stack[--size];
+            stack[size] = null;
             switch (order) {
                 case PreOrder -> {
-                    stack.push(current.getChild(Node.Direction.RIGHT));
-                    stack.push(current.getChild(Node.Direction.LEFT));
+                    push(current.right());
+                    push(current.left());
                 }
-                case InOrder -> moveLeft(current.getChild(Node.Direction.RIGHT));
+                case InOrder -> pushSpine(descending ? current.left() : current.right());
                 case PostOrder -> {
-                    while (current.getChild(Node.Direction.RIGHT) != null && !visitedRight.peek()) {
-                        visitedRight.pop();
-                        visitedRight.push(true);
-                        stack.push(current);
-                        moveLeft(current.getChild(Node.Direction.RIGHT));
-                        current = stack.pop();
+                    if (size > 0) {
+                        Node<E> parent = stack[size - 1];
+                        if (parent.left() == current) {
+                            pushFirstLeaf(parent.right());
+                        }
                     }
-                    visitedRight.pop();
                 }
             }
+            return current.value();
+        }
+
+        private void push(Node<E> node) {
+            if (node != null) {
+                stack[size++] = node;
+            }
+        }
+
+        /**
+         * Push the node and its leftmost descendants, or the rightmost ones when descending.
+         */
+        private void pushSpine(Node<E> node) {
+            while (node != null) {
+                stack[size++] = node;
+                node = descending ? node.right() : node.left();
+            }
+        }
+
+        /**
+         * Push the path from the node to the first node of its subtree in post-order.
+         */
+        private void pushFirstLeaf(Node<E> node) {
+            while (node != null) {
+                stack[size++] = node;
+                node = node.left() != null ? node.left() : node.right();
+            }
+        }
+    }
+
+    /**
+     * Spliterator over the elements at positions from index to end. The stack of the in-order traversal
+     * is made on the first advance, so splitting before it costs nothing but the new object.
+     */
+    private class TreeSpliterator implements Spliterator<E> {
+        private int index;
+        private final int end;
+        private Node<E>[] stack;
+        private int size;
+
+        TreeSpliterator(int index, int end) {
+            this.index = index;
+            this.end = end;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super E> action) {
+            if (index >= end) {
+                return false;
+            }
+            action.accept(advance());
+            return true;
+        }
 
-            while (!stack.isEmpty() && stack.peek() == null) {
-                stack.pop();
+        @Override
+        public void forEachRemaining(Consumer<? super E> action) {
+            while (index < end) {
+                action.accept(advance());
             }
+        }
+
+        @Override
+        public Spliterator<E> trySplit() {
+            int middle = (index + end) >>> 1;
+            if (middle == index) {
+                return null;
+            }
+            // the prefix continues the traversal already started, if any
+            TreeSpliterator prefix = new TreeSpliterator(index, middle);
+            prefix.stack = stack;
+            prefix.size = size;
+            stack = null;
+            size = 0;
+            index = middle;
+            return prefix;
+        }
 
+        @Override
+        public long estimateSize() {
+            return end - index;
+        }
+
+        @Override
+        public int characteristics() {
+            // a comparator may accept null, e.g. Comparator.nullsFirst, the natural order never does
+            int characteristics = ORDERED | SORTED | DISTINCT | SIZED | SUBSIZED | IMMUTABLE;
+            return comparator == naturalOrder() ? characteristics | NONNULL : characteristics;
+        }
+
+        @Override
+        public Comparator<? super E> getComparator() {
+            return comparator == naturalOrder() ? null : comparator;
+        }
+
+        private E advance() {
+            if (stack == null) {
+                start();
+            }
+            Node<E> current = stack[--size];
+            stack[size] = null;
+            for (Node<E> node = current.right(); node != null; node = node.left()) {
+                stack[size++] = node;
+            }
+            index++;
             return current.value();
         }
 
-        private void moveLeft(Node<E> current) {
+        /**
+         * Descend to the element at the index, keeping the ancestors that come after it.
+         */
+        @SuppressWarnings("unchecked")
+        private void start() {
+            stack = (Node<E>[]) new Node<?>[2 * Node.blackHeight(root) + 1];
+            Node<E> current = root;
+            int position = index;
             while (current != null) {
-                stack.push(current);
-                visitedRight.push(false);
-                current = current.getChild(Node.Direction.LEFT);
+                int leftSize = Node.size(current.left());
+                if (position <= leftSize) {
+                    stack[size++] = current;
+                    if (position == leftSize) {
+                        return;
+                    }
+                    current = current.left();
+                } else {
+                    position -= leftSize + 1;
+                    current = current.right();
+                }
             }
         }
     }
+
+    private class RangeIterator implements Iterator<E> {
+        private final Node<E>[] stack;
+        private int size;
+        private final E to;
+        private final boolean toInclusive;
+
+        @SuppressWarnings("unchecked")
+        RangeIterator(E from, boolean fromInclusive, E to, boolean toInclusive) {
+            // a path of a red-black tree has at most twice as many nodes as the black height of the root
+            this.stack = (Node<E>[]) new Node<?>[2 * Node.blackHeight(root) + 1];
+            this.to = to;
+            this.toInclusive = toInclusive;
+
+            Node<E> current = root;
+            while (current != null) {
+                int comparisonResult = from == null ? -1 : comparator.compare(from, current.value());
+                if (comparisonResult < 0 || comparisonResult == 0 && fromInclusive) {
+                    stack[size++] = current;
+                    if (comparisonResult == 0) {
+                        break;
+                    }
+                    current = current.left();
+                } else {
+                    current = current.right();
+                }
+            }
+        }
+
+        public boolean hasNext() {
+            if (size == 0) {
+                return false;
+            }
+            if (to == null) {
+                return true;
+            }
+            int comparisonResult = comparator.compare(to, stack[size - 1].value());
+            return comparisonResult > 0 || comparisonResult == 0 && toInclusive;
+        }
+
+        public E next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Node<E> current = stack[--size];
+            stack[size] = null;
+            for (Node<E> node = current.right(); node != null; node = node.left()) {
+                stack[size++] = node;
+            }
+            return current.value();
+        }
+    }
 }
@@ -0,0 +1,54 @@
+package io.whitecloud.impl;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Decides which versions of a {@link VersionedTree} stay in its history.
+ * Policies must be monotone: if a version is retained, all newer versions are retained too,
+ * so the history is trimmed from its oldest end. Tagged versions and the current one are always kept.
+ */
+@FunctionalInterface
+public interface RetentionPolicy {
+    /**
+     * @param version version in the history
+     * @param latest number of the current version
+     * @param now time of the check
+     * @return if the version should stay in the history
+     */
+    boolean retains(VersionedTree.Version<?> version, long latest, Instant now);
+
+    /**
+     * @return policy keeping every version
+     */
+    static RetentionPolicy all() {
+        return (version, latest, now) -> true;
+    }
+
+    /**
+     * @param count number of the newest versions to keep, including the current one
+     */
+    static RetentionPolicy lastVersions(int count) {
+        if (count < 1) {
+            throw new IllegalArgumentException("Count must be positive: " + count);
+        }
+        return (version, latest, now) -> latest - version.number() < count;
+    }
+
+    /**
+     * @param window age of the oldest version to keep
+     */
+    static RetentionPolicy within(Duration window) {
+        if (window.isNegative()) {
+            throw new IllegalArgumentException("Window must not be negative: " + window);
+        }
+        return (version, latest, now) -> !version.created().plus(window).isBefore(now);
+    }
+
+    /**
+     * @return policy keeping the versions kept by this policy or by the other one
+     */
+    default RetentionPolicy or(RetentionPolicy other) {
+        return (version, latest, now) -> retains(version, latest, now) || other.retains(version, latest, now);
+    }
+}
@@ -0,0 +1,70 @@
+package io.whitecloud.impl;
+
+import java.util.Comparator;
+
+import static io.whitecloud.impl.TreeUtils.*;
+
+/**
+ * Mutable editor of a red-black tree for applying a batch of changes when only the final version is needed.
+ * Every node created by the editor is tagged with its edit token, and later changes of the same editor
+ * modify such nodes in place instead of copying them. Nodes of the version the editor started from
+ * are copied as usual, so that version and all others stay untouched.
+ * The editor is not thread-safe.
+ */
+public class TransientRedBlackTree<E> {
+    private Node<E> root;
+    private final Comparator<? super E> comparator;
+    private Object edit = new Object();
+
+    TransientRedBlackTree(Node<E> root, Comparator<? super E> comparator) {
+        this.root = root;
+        this.comparator = comparator;
+    }
+
+    /**
+     * Add new element to the tree. Does nothing if the element is already in the tree.
+     * @param el element to add
+     * @return this editor
+     */
+    public TransientRedBlackTree<E> add(E el) {
+        root = insert(root, el, comparator, edit);
+        return this;
+    }
+
+    /**
+     * Delete an element from the tree. Does nothing if the element isn't in the tree.
+     * @param el element to delete
+     * @return this editor
+     */
+    public TransientRedBlackTree<E> delete(E el) {
+        root = remove(root, el, comparator, edit);
+        return this;
+    }
+
+    /**
+     * Check if element is in the tree.
+     * @param el element to check
+     * @return if element is in the tree or not
+     */
+    public boolean contains(E el) {
+        return traverse(root, el, comparator, node -> node, __ -> {}) != null;
+    }
+
+    /**
+     * @return number of elements in the tree
+     */
+    public int size() {
+        return Node.size(root);
+    }
+
+    /**
+     * Publish the current state as a persistent tree in O(1).
+     * The editor takes a new edit token, so nodes of the returned tree are never changed in place again
+     * and the editor can continue with further changes.
+     * @return persistent tree with all changes made so far
+     */
+    public PersistentRedBlackTree<E> toPersistent() {
+        edit = new Object();
+        return new PersistentRedBlackTree<>(root, comparator);
+    }
+}
@@ -0,0 +1,165 @@
+package io.whitecloud.impl;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StreamCorruptedException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import static io.whitecloud.impl.TreeWriter.*;
+
+/**
+ * Streaming reader of versions written by {@link TreeWriter}.
+ * Every node is created once and referenced by all versions containing it, so the versions share nodes
+ * exactly as the written ones did.
+ * Every node and version is checked as it is read: elements in order, no red node with a red child,
+ * equal black heights of the children and a black root. A stream breaking any of them is rejected
+ * with {@link StreamCorruptedException}, so a corrupted stream never yields a broken tree.
+ */
+public final class TreeReader<E> implements Closeable {
+    private final DataInputStream in;
+    private final ElementCodec<? extends E> codec;
+    private final Comparator<? super E> comparator;
+    private final List<Node<E>> nodes = new ArrayList<>();
+    // least and greatest element of the subtree of every node, by its id, for the ordering check
+    private final List<E> least = new ArrayList<>();
+    private final List<E> greatest = new ArrayList<>();
+    private boolean ended;
+
+    /**
+     * Reader of trees ordered by the natural order of the elements.
+     */
+    public TreeReader(InputStream in, ElementCodec<? extends E> codec) throws IOException {
+        this(in, codec, PersistentRedBlackTree.naturalOrder());
+    }
+
+    /**
+     * @param comparator order of the written trees
+     */
+    public TreeReader(InputStream in, ElementCodec<? extends E> codec, Comparator<? super E> comparator)
+        throws IOException
+    {
+        this.in = new DataInputStream(new BufferedInputStream(in));
+        this.codec = codec;
+        this.comparator = comparator;
+        if (this.in.readInt() != MAGIC) {
+            throw new StreamCorruptedException("Not a tree stream");
+        }
+        int format = this.in.readUnsignedByte();
+        if (format != FORMAT) {
+            throw new StreamCorruptedException("Unsupported format: " + format);
+        }
+        nodes.add(null);
+        least.add(null);
+        greatest.add(null);
+    }
+
+    /**
+     * Read the next version with the nodes written before it.
+     * @return version or null at the end of the stream
+     */
+    public PersistentRedBlackTree<E> read() throws IOException {
+        while (!ended) {
+            int flags = in.readUnsignedByte();
+            if (flags == END) {
+                ended = true;
+            } else if (flags == VERSION) {
+                int reference = readVarInt();
+                Node<E> root = reference == 0 ? null : node(nodes.size(), reference);
+                if (root != null && !root.isBlack()) {
+                    throw new StreamCorruptedException("Red root");
+                }
+                return new PersistentRedBlackTree<>(root, comparator);
+            } else if ((flags & ~(BLACK | LEFT | RIGHT)) != 0) {
+                throw new StreamCorruptedException("Invalid flags: " + flags);
+            } else {
+                int id = nodes.size();
+                E value = codec.read(in);
+                int left = (flags & LEFT) != 0 ? childId(id, readVarInt()) : 0;
+                int right = (flags & RIGHT) != 0 ? childId(id, readVarInt()) : 0;
+                nodes.add(checked(id, value, (flags & BLACK) != 0, left, right));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return all remaining versions
+     */
+    public List<PersistentRedBlackTree<E>> readAll() throws IOException {
+        List<PersistentRedBlackTree<E>> versions = new ArrayList<>();
+        for (PersistentRedBlackTree<E> version = read(); version != null; version = read()) {
+            versions.add(version);
+        }
+        return versions;
+    }
+
+    /**
+     * @return number of distinct nodes read so far
+     */
+    public int nodeCount() {
+        return nodes.size() - 1;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private Node<E> node(int id, int reference) throws IOException {
+        return nodes.get(childId(id, reference));
+    }
+
+    /**
+     * @return id of the node referenced from the given id
+     */
+    private int childId(int id, int reference) throws IOException {
+        if (reference <= 0 || reference >= id) {
+            throw new StreamCorruptedException("Invalid node reference: " + reference + " from " + id);
+        }
+        return id - reference;
+    }
+
+    /**
+     * Create the node after checking it against its children, which were checked when they were read,
+     * so every subtree is a valid red-black tree.
+     * The ordering is checked against the greatest element on the left and the least on the right,
+     * which are kept for every node, so each check takes constant time.
+     * @param left id of the left child or 0
+     * @param right id of the right child or 0
+     */
+    private Node<E> checked(int id, E value, boolean isBlack, int left, int right) throws IOException {
+        Node<E> leftNode = nodes.get(left);
+        Node<E> rightNode = nodes.get(right);
+        if (!isBlack && !(TreeUtils.isBlack(leftNode) && TreeUtils.isBlack(rightNode))) {
+            throw new StreamCorruptedException("Red node " + id + " has a red child");
+        }
+        if (Node.blackHeight(leftNode) != Node.blackHeight(rightNode)) {
+            throw new StreamCorruptedException("Children of node " + id + " have different black heights");
+        }
+        if (left != 0 && comparator.compare(greatest.get(left), value) >= 0
+            || right != 0 && comparator.compare(least.get(right), value) <= 0)
+        {
+            throw new StreamCorruptedException("Node " + id + " is out of order");
+        }
+        least.add(left != 0 ? least.get(left) : value);
+        greatest.add(right != 0 ? greatest.get(right) : value);
+        return new ElementNode<>(value, isBlack, leftNode, rightNode);
+    }
+
+    private int readVarInt() throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new StreamCorruptedException("Malformed varint");
+    }
+}
@@ -1,17 +1,19 @@
 package io.whitecloud.impl;
 
-import java.util.LinkedList;
+import java.util.Comparator;
+import java.util.Iterator;
 import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.UnaryOperator;
 
 class TreeUtils {
-    public static <E extends Comparable<E>> Node<E> traverse(Node<E> root, E el,
-                                                             Function<Node<E>, Node<E>> onExact,
-                                                             Consumer<Node<E>> onEach)
+    public static <E> Node<E> traverse(Node<E> root, E el, Comparator<? super E> comparator,
+                                       Function<Node<E>, Node<E>> onExact,
+                                       Consumer<Node<E>> onEach)
     {
         Node<E> current = root;
         while (current != null) {
-            int comparisonResult = el.compareTo(current.value());
+            int comparisonResult = comparator.compare(el, current.value());
             if (comparisonResult == 0) {
                 return onExact.apply(current);
             }
@@ -22,276 +24,416 @@ class TreeUtils {
         return null;
     }
 
-    public static <E> Node<E> insert(LinkedList<Node<E>> parents, Node<E> node, Node.Direction nodeDirection) {
-        if (parents.isEmpty()) {
-            return Node.builderFrom(node)
-                .isBlack(true)
-                .build();
-        }
-        else if (!isBlack(parents.getLast())) {
-            return insertUncleRed(parents, node, nodeDirection);
+    /**
+     * Insert the element with a single descent: the same walk detects an existing element and records the path.
+     * @param edit edit token of a transient editor or null to copy every changed node
+     * @return new root or the same root if the element is already in the tree
+     */
+    public static <E> Node<E> insert(Node<E> root, E el, Comparator<? super E> comparator, Object edit) {
+        NodePath<E> path = NodePath.acquire();
+        try {
+            Node.Direction dir = null;
+            Node<E> current = root;
+            while (current != null) {
+                int comparisonResult = comparator.compare(el, current.value());
+                if (comparisonResult == 0) {
+                    return root;
+                }
+                path.push(current, dir);
+                dir = comparisonResult < 0 ? Node.Direction.LEFT : Node.Direction.RIGHT;
+                current = current.getChild(dir);
+            }
+            if (path.isEmpty()) {
+                return new ElementNode<>(el, true, null, null, edit);
+            }
+            return insert(path, new ElementNode<>(el, false, null, null, edit), dir, edit);
+        } finally {
+            path.release();
         }
-        return updateParentsUpToRootAdd(parents, node, nodeDirection);
     }
 
-    private static <E> Node<E> insertUncleRed(LinkedList<Node<E>> parents, Node<E> node, Node.Direction nodeDirection) {
-        Node<E> grandParent = parents.get(parents.size() - 2);
-        Node<E> parent = parents.getLast();
-        Node.Direction uncleDirection = grandParent.getDirectionOfChild(parent).getOpposite();
-        Node<E> uncle = grandParent.getChild(uncleDirection);
-
-        if (isBlack(uncle)) {
-            return insertUncleBlack(parents, node, nodeDirection);
+    /**
+     * Remove the element with a single descent.
+     * @param edit edit token of a transient editor or null to copy every changed node
+     * @return new root or the same root if the element isn't in the tree
+     */
+    public static <E> Node<E> remove(Node<E> root, E el, Comparator<? super E> comparator, Object edit) {
+        NodePath<E> path = NodePath.acquire();
+        try {
+            Node.Direction dir = null;
+            Node<E> current = root;
+            while (current != null) {
+                int comparisonResult = comparator.compare(el, current.value());
+                if (comparisonResult == 0) {
+                    return remove(path, current, dir, edit);
+                }
+                path.push(current, dir);
+                dir = comparisonResult < 0 ? Node.Direction.LEFT : Node.Direction.RIGHT;
+                current = current.getChild(dir);
+            }
+            return root;
+        } finally {
+            path.release();
         }
+    }
 
-        parents.removeLast();
-        parents.removeLast();
-
-        Node<E> newParent = Node.builderFrom(parent)
-            .child(node, nodeDirection)
-            .isBlack(true)
-            .build();
-        Node<E> newUncle = Node.builderFrom(uncle)
-            .isBlack(true)
-            .build();
-        Node<E> newGrandParent = Node.builderFrom(grandParent)
-            .child(newUncle, uncleDirection)
-            .child(newParent, uncleDirection.getOpposite())
-            .isBlack(false)
-            .build();
-
-        Node.Direction direction = getNodeDirection(parents, grandParent);
-        return insert(parents, newGrandParent, direction);
+    /**
+     * Replace, insert or remove the node with the element with a single descent.
+     * @param update gets the node with the element, or null if there is none, and returns
+     *               the same node to leave the tree unchanged, null to remove the node,
+     *               or a new node with the same element; a replacement of an existing node keeps its color
+     *               and children, a node for a missing element is red and has no children
+     * @param edit edit token of a transient editor or null to copy every changed node
+     * @return new root or the same root if nothing changed
+     */
+    static <E> Node<E> update(Node<E> root, E el, Comparator<? super E> comparator, UnaryOperator<Node<E>> update,
+                              Object edit) {
+        NodePath<E> path = NodePath.acquire();
+        try {
+            Node.Direction dir = null;
+            Node<E> current = root;
+            while (current != null) {
+                int comparisonResult = comparator.compare(el, current.value());
+                if (comparisonResult == 0) {
+                    Node<E> replacement = update.apply(current);
+                    if (replacement == current) {
+                        return root;
+                    }
+                    if (replacement == null) {
+                        return remove(path, current, dir, edit);
+                    }
+                    // same element in the same place: only the path is copied, no rebalancing is needed
+                    return updateParentsUpToRoot(path, replacement, dir, edit);
+                }
+                path.push(current, dir);
+                dir = comparisonResult < 0 ? Node.Direction.LEFT : Node.Direction.RIGHT;
+                current = current.getChild(dir);
+            }
+            Node<E> node = update.apply(null);
+            if (node == null) {
+                return root;
+            }
+            if (path.isEmpty()) {
+                return node.withColor(true, edit);
+            }
+            return insert(path, node, dir, edit);
+        } finally {
+            path.release();
+        }
     }
 
-    private static <E> Node<E> insertUncleBlack(LinkedList<Node<E>> parents, Node<E> node, Node.Direction nodeDirection) {
-        Node<E> grandParent = parents.get(parents.size() - 2);
-        Node<E> parent = parents.getLast();
-        Node.Direction parentDirection = grandParent.getDirectionOfChild(parent);
+    /*
+     * Rebalancing after insert and remove.
+     * Every case builds the final shape of the changed subtree directly (recoloring and rotations included),
+     * so each node copy is a single allocation. Nodes owned by the edit token are changed in place,
+     * so everything a case needs from a node is read before the node is passed to a copy.
+     */
+
+    /**
+     * Attach a red node with black children below the last node of the path and restore the balance.
+     * @param path path from the root to the new parent of the node
+     * @param node red node with black children
+     * @param nodeDirection direction of the node from its new parent
+     * @param edit edit token of a transient editor or null
+     * @return new root
+     */
+    static <E> Node<E> insert(NodePath<E> path, Node<E> node, Node.Direction nodeDirection, Object edit) {
+        if (!isBlack(path.last())) {
+            return insertUncleRed(path, node, nodeDirection, edit);
+        }
+        return updateParentsUpToRoot(path, node, nodeDirection, edit);
+    }
 
-        Node.NodeBuilder<E> parentBuilder = Node.builderFrom(parent)
-            .child(node, nodeDirection);
+    private static <E> Node<E> insertUncleRed(NodePath<E> path, Node<E> node, Node.Direction nodeDirection, Object edit) {
+        Node<E> grandParent = path.beforeLast();
+        Node.Direction parentDirection = path.lastDirection();
+        Node<E> uncle = grandParent.getChild(parentDirection.getOpposite());
 
-        if (nodeDirection != parentDirection) {
-            parents.removeLast();
-            Node<E> replacement = rotate(parentBuilder.build(), parentDirection);
-            parents.addLast(replacement);
-            parentBuilder = Node.builderFrom(replacement);
+        if (isBlack(uncle)) {
+            return insertUncleBlack(path, node, nodeDirection, edit);
         }
 
-        Node<E> newParent = parentBuilder
-            .isBlack(true)
-            .build();
-        Node<E> newGrandParent = Node.builderFrom(grandParent)
-            .child(newParent, grandParent.getDirectionOfChild(parent))
-            .isBlack(false)
-            .build();
+        Node<E> parent = path.pop();
+        Node.Direction grandParentDirection = path.lastDirection();
+        path.pop();
 
-        parents.removeLast();
-        parents.removeLast();
+        Node<E> newParent = parent.withChild(node, nodeDirection, true, edit);
+        Node<E> newUncle = uncle.withColor(true, edit);
+        if (path.isEmpty()) {
+            return grandParent.withChildren(newParent, parentDirection, newUncle, true, edit);
+        }
+        Node<E> newGrandParent = grandParent.withChildren(newParent, parentDirection, newUncle, false, edit);
+        return insert(path, newGrandParent, grandParentDirection, edit);
+    }
 
-        Node<E> rotated = rotate(newGrandParent, parentDirection.getOpposite());
-        Node.Direction direction = getNodeDirection(parents, grandParent);
-        return updateParentsUpToRootAdd(parents, rotated, direction);
+    private static <E> Node<E> insertUncleBlack(NodePath<E> path, Node<E> node, Node.Direction nodeDirection, Object edit) {
+        Node.Direction parentDirection = path.lastDirection();
+        Node.Direction uncleDirection = parentDirection.getOpposite();
+        Node<E> parent = path.pop();
+        Node.Direction grandParentDirection = path.lastDirection();
+        Node<E> grandParent = path.pop();
+
+        Node<E> newSubtreeRoot;
+        if (nodeDirection == parentDirection) {
+            // single rotation: parent goes up, grandparent becomes its child
+            Node<E> newGrandParent = grandParent.withChild(parent.getChild(uncleDirection), parentDirection, false, edit);
+            newSubtreeRoot = parent.withChildren(node, parentDirection, newGrandParent, true, edit);
+        } else {
+            // double rotation: node goes up, parent and grandparent become its children
+            Node<E> newParent = parent.withChild(node.getChild(parentDirection), nodeDirection, false, edit);
+            Node<E> newGrandParent = grandParent.withChild(node.getChild(nodeDirection), parentDirection, false, edit);
+            newSubtreeRoot = node.withChildren(newParent, parentDirection, newGrandParent, true, edit);
+        }
+        return updateParentsUpToRoot(path, newSubtreeRoot, grandParentDirection, edit);
     }
 
-    public static <E> Node<E> remove(LinkedList<Node.NodeWithDirection<E>> parents, Node<E> node) {
-        if (node.getChild(Node.Direction.LEFT) != null && node.getChild(Node.Direction.RIGHT) != null) {
-            Node<E> current = node.getChild(Node.Direction.RIGHT);
-            E lastValue = null;
-            while (current != null) {
-                lastValue = current.value();
-                current = current.getChild(Node.Direction.LEFT);
+    /**
+     * Remove the greatest element.
+     * @param root root of a non-empty tree, may be red
+     * @param edit edit token of a transient editor or null
+     * @return new root
+     */
+    public static <E> Node<E> removeLast(Node<E> root, Object edit) {
+        NodePath<E> path = NodePath.acquire();
+        try {
+            Node.Direction dir = null;
+            Node<E> current = root;
+            while (current.getChild(Node.Direction.RIGHT) != null) {
+                path.push(current, dir);
+                dir = Node.Direction.RIGHT;
+                current = current.getChild(Node.Direction.RIGHT);
             }
+            return remove(path, current, dir, edit);
+        } finally {
+            path.release();
+        }
+    }
 
-            Node<E> newNode = Node.builderFrom(node)
-                .value(lastValue)
-                .build();
-            var direction = parents.isEmpty() ? null : parents.getLast().node().getDirectionOfChild(node);
-            parents.add(new Node.NodeWithDirection<>(newNode, direction));
-
-            current = node.getChild(Node.Direction.RIGHT);
-            while (current != null) {
-                parents.add(createNodeWithDirection(parents, current));
+    /**
+     * Remove the last node of a search path and restore the balance.
+     * @param path path from the root to the parent of the node
+     * @param node node to remove
+     * @param nodeDirection direction of the node from its parent
+     * @param edit edit token of a transient editor or null
+     * @return new root
+     */
+    static <E> Node<E> remove(NodePath<E> path, Node<E> node, Node.Direction nodeDirection, Object edit) {
+        if (node.getChild(Node.Direction.LEFT) != null && node.getChild(Node.Direction.RIGHT) != null) {
+            Node<E> successor = node.getChild(Node.Direction.RIGHT);
+            while (successor.getChild(Node.Direction.LEFT) != null) {
+                successor = successor.getChild(Node.Direction.LEFT);
+            }
+            Node<E> right = node.getChild(Node.Direction.RIGHT);
+            path.push(node.withValueOf(successor, edit), nodeDirection);
+
+            Node.Direction dir = Node.Direction.RIGHT;
+            Node<E> current = right;
+            while (current != successor) {
+                path.push(current, dir);
+                dir = Node.Direction.LEFT;
                 current = current.getChild(Node.Direction.LEFT);
             }
-            Node<E> currentParent = parents.removeLast().node();
-            return removeOneChild(parents, currentParent);
+            return removeOneChild(path, successor, dir, edit);
         }
-        return removeOneChild(parents, node);
+        return removeOneChild(path, node, nodeDirection, edit);
     }
 
-    private static <E> Node<E> removeOneChild(LinkedList<Node.NodeWithDirection<E>> parents, Node<E> node) {
+    private static <E> Node<E> removeOneChild(NodePath<E> path, Node<E> node, Node.Direction nodeDirection, Object edit) {
         Node<E> child = node.getChild(node.getDirectionOfChild(null).getOpposite());
-        Node<E> newChild = child == null ? null : Node.builderFrom(child)
-            .isBlack(true)
-            .build();
+        boolean childIsBlack = isBlack(child);
+        Node<E> newChild = child == null ? null : child.withColor(true, edit);
 
-        if (parents.isEmpty()) {
+        if (path.isEmpty()) {
             return newChild;
         }
 
-        Node.Direction nodeDirection = parents.getLast().node().getDirectionOfChild(node);
         if (isBlack(node)) {
-            if (isBlack(child)) {
-                return removeRedSibling(parents, newChild, nodeDirection);
+            if (childIsBlack) {
+                return removeRedSibling(path, newChild, nodeDirection, edit);
             }
         }
-        return updateParentsUpToRootDelete(parents, newChild, nodeDirection);
+        return updateParentsUpToRoot(path, newChild, nodeDirection, edit);
     }
 
-    private static <E> Node<E> removeRedSibling(LinkedList<Node.NodeWithDirection<E>> parents, Node<E> node, Node.Direction nodeDirection) {
-        Node.NodeWithDirection<E> parentWithDir = parents.getLast();
-        Node<E> parent = parentWithDir.node();
+    private static <E> Node<E> removeRedSibling(NodePath<E> path, Node<E> node, Node.Direction nodeDirection, Object edit) {
+        Node<E> parent = path.last();
         Node<E> sibling = parent.getChild(nodeDirection.getOpposite());
 
         if (!isBlack(sibling)) {
-            Node<E> newSibling = Node.builderFrom(sibling)
-                .isBlack(true)
-                .build();
-            Node<E> newParent = Node.builderFrom(parent)
-                .child(node, nodeDirection)
-                .child(newSibling, nodeDirection.getOpposite())
-                .isBlack(false)
-                .build();
-
-            Node<E> replacement = rotate(newParent, nodeDirection);
-
-            parents.removeLast();
-            parents.add(new Node.NodeWithDirection<>(replacement, parentWithDir.direction()));
-            parents.add(new Node.NodeWithDirection<>(replacement.getChild(nodeDirection), nodeDirection));
-            node = replacement.getChild(nodeDirection).getChild(nodeDirection);
+            // rotate the red sibling up, the parent becomes red and the node gets a black sibling
+            Node<E> newParent = parent.withChildren(node, nodeDirection, sibling.getChild(nodeDirection), false, edit);
+            Node<E> replacement = sibling.withChild(newParent, nodeDirection, true, edit);
+
+            Node.Direction parentDirection = path.lastDirection();
+            path.pop();
+            path.push(replacement, parentDirection);
+            path.push(newParent, nodeDirection);
         }
-        return removeBlackSibling(parents, node, nodeDirection);
+        return removeBlackSibling(path, node, nodeDirection, edit);
     }
 
-    private static <E> Node<E> removeBlackSibling(LinkedList<Node.NodeWithDirection<E>> parents, Node<E> node, Node.Direction nodeDirection) {
-        Node.NodeWithDirection<E> parentWithDir = parents.getLast();
-        Node<E> parent = parentWithDir.node();
-        Node<E> sibling = parent.getChild(nodeDirection.getOpposite());
-        Node.NodeBuilder<E> newParentBuilder = Node.builderFrom(parent)
-            .child(node, nodeDirection)
-            .isBlack(true);
+    private static <E> Node<E> removeBlackSibling(NodePath<E> path, Node<E> node, Node.Direction nodeDirection, Object edit) {
+        Node.Direction siblingDirection = nodeDirection.getOpposite();
+        Node<E> parent = path.last();
+        boolean parentIsBlack = parent.isBlack();
+        Node<E> sibling = parent.getChild(siblingDirection);
+
+        if (sibling == null) {
+            Node.Direction parentDirection = path.lastDirection();
+            path.pop();
+            return updateParentsUpToRoot(path, parent.withChild(node, nodeDirection, true, edit), parentDirection, edit);
+        }
 
-        if (sibling != null && isBlack(sibling.getChild(nodeDirection.getOpposite()))) {
-            if (isBlack(sibling.getChild(nodeDirection))) {
-                return removeBlackSiblingWithBlackChildren(parents, node, nodeDirection);
+        Node<E> newSubtreeRoot;
+        if (isBlack(sibling.getChild(siblingDirection))) {
+            Node<E> siblingChild = sibling.getChild(nodeDirection);
+            if (isBlack(siblingChild)) {
+                return removeBlackSiblingWithBlackChildren(path, node, nodeDirection, edit);
             }
-            Node<E> newSiblingChild = Node.builderFrom(sibling.getChild(nodeDirection))
-                .isBlack(true)
-                .build();
-            sibling = Node.builderFrom(sibling)
-                .isBlack(false)
-                .child(newSiblingChild, nodeDirection)
-                .build();
-            sibling = rotate(sibling, nodeDirection.getOpposite());
-            newParentBuilder = newParentBuilder
-                .child(sibling, nodeDirection.getOpposite());
+            // double rotation: the red inner child of the sibling goes up
+            Node<E> newSibling = sibling.withChild(siblingChild.getChild(siblingDirection), nodeDirection, true, edit);
+            Node<E> newParent = parent.withChildren(node, nodeDirection, siblingChild.getChild(nodeDirection), true, edit);
+            newSubtreeRoot = siblingChild.withChildren(newParent, nodeDirection, newSibling, parentIsBlack, edit);
+        } else {
+            // single rotation: the sibling goes up, its red outer child becomes black
+            Node<E> newSiblingChild = sibling.getChild(siblingDirection).withColor(true, edit);
+            Node<E> newParent = parent.withChildren(node, nodeDirection, sibling.getChild(nodeDirection), true, edit);
+            newSubtreeRoot = sibling.withChildren(newParent, nodeDirection, newSiblingChild, parentIsBlack, edit);
         }
 
-        parents.removeLast();
+        Node.Direction parentDirection = path.lastDirection();
+        path.pop();
+        return updateParentsUpToRoot(path, newSubtreeRoot, parentDirection, edit);
+    }
 
-        if (sibling != null) {
-            Node<E> siblingChild = sibling.getChild(nodeDirection.getOpposite());
-            if (siblingChild != null) {
-                siblingChild = Node.builderFrom(siblingChild)
-                    .isBlack(true)
-                    .build();
-            }
-            Node<E> newSibling = Node.builderFrom(sibling)
-                .child(siblingChild, nodeDirection.getOpposite())
-                .isBlack(parent.isBlack())
-                .build();
-            Node<E> newParent = newParentBuilder
-                .child(newSibling, nodeDirection.getOpposite())
-                .build();
-            Node<E> rotated = rotate(newParent, nodeDirection);
-
-            if (parents.isEmpty()) {
-                return rotated;
+    private static <E> Node<E> removeBlackSiblingWithBlackChildren(NodePath<E> path, Node<E> node, Node.Direction nodeDirection,
+                                                                   Object edit)
+    {
+        Node.Direction parentDirection = path.lastDirection();
+        Node<E> parent = path.pop();
+        boolean parentIsBlack = parent.isBlack();
+        Node<E> newSibling = parent.getChild(nodeDirection.getOpposite()).withColor(false, edit);
+        Node<E> newParent = parent.withChildren(node, nodeDirection, newSibling, true, edit);
+
+        if (parentIsBlack) {
+            if (path.isEmpty()) {
+                return newParent;
             }
-            return updateParentsUpToRootDelete(parents, rotated, parentWithDir.direction());
+            return removeRedSibling(path, newParent, parentDirection, edit);
         }
-        return updateParentsUpToRootDelete(parents, newParentBuilder.build(), parentWithDir.direction());
+        return updateParentsUpToRoot(path, newParent, parentDirection, edit);
     }
 
-    private static <E> Node<E> removeBlackSiblingWithBlackChildren(LinkedList<Node.NodeWithDirection<E>> parents, Node<E> node, Node.Direction nodeDirection) {
-        Node.NodeWithDirection<E> parentWithDir = parents.removeLast();
-        Node<E> parent = parentWithDir.node();
-        Node<E> sibling = parent.getChild(nodeDirection.getOpposite());
-        Node<E> newSibling = Node.builderFrom(sibling)
-            .isBlack(false)
-            .build();
-        Node.NodeBuilder<E> newParentBuilder = Node.builderFrom(parent)
-            .child(node, nodeDirection)
-            .child(newSibling, nodeDirection.getOpposite());
-
-        if (parent.isBlack()) {
-            if (parents.isEmpty()) {
-                return newParentBuilder.build();
-            }
-            return removeRedSibling(parents, newParentBuilder.build(), parentWithDir.direction());
+    private static <E> Node<E> updateParentsUpToRoot(NodePath<E> path, Node<E> node, Node.Direction nodeDirection, Object edit) {
+        while (!path.isEmpty()) {
+            Node.Direction parentDirection = path.lastDirection();
+            node = path.pop().withChild(node, nodeDirection, edit);
+            nodeDirection = parentDirection;
         }
+        return node;
+    }
 
-        Node<E> newParent = newParentBuilder
-            .isBlack(true)
-            .build();
-        return updateParentsUpToRootDelete(parents, newParent, parentWithDir.direction());
+    /**
+     * Build a tree from strictly increasing elements in O(n), consuming them in order.
+     * The tree is perfectly balanced; all nodes are black except the last, incomplete level, which is red.
+     * @param elements iterator over exactly size elements
+     * @param size number of elements
+     * @throws IllegalArgumentException if elements are not strictly increasing
+     */
+    public static <E> Node<E> buildFromSorted(Iterator<? extends E> elements, int size, Comparator<? super E> comparator) {
+        int redLevel = 31 - Integer.numberOfLeadingZeros(size + 1);
+        return buildFromSorted(elements, comparator, new Object[] {null}, 0, 0, size - 1, redLevel);
     }
 
-    private static <E> Node<E> rotate(Node<E> node, Node.Direction direction) {
-        Node<E> child = node.getChild(direction.getOpposite());
-        Node<E> newNode = Node.builderFrom(node)
-            .child(child.getChild(direction), direction.getOpposite())
-            .build();
-        return Node.builderFrom(child)
-            .child(newNode, direction)
-            .build();
+    @SuppressWarnings("unchecked")
+    private static <E> Node<E> buildFromSorted(Iterator<? extends E> elements, Comparator<? super E> comparator,
+                                               Object[] previous, int level, int low, int high, int redLevel)
+    {
+        if (high < low) {
+            return null;
+        }
+        int middle = (low + high) >>> 1;
+        Node<E> left = buildFromSorted(elements, comparator, previous, level + 1, low, middle - 1, redLevel);
+
+        E value = elements.next();
+        if (previous[0] != null && comparator.compare((E) previous[0], value) >= 0) {
+            throw new IllegalArgumentException("Elements are not strictly increasing: " + previous[0] + ", " + value);
+        }
+        previous[0] = value;
+
+        Node<E> right = buildFromSorted(elements, comparator, previous, level + 1, middle + 1, high, redLevel);
+        return new ElementNode<>(value, level != redLevel, left, right);
     }
 
     public static <E> boolean isBlack(Node<E> node) {
         return node == null || node.isBlack();
     }
 
-    private static <E> Node.Direction getNodeDirection(LinkedList<Node<E>> parents, Node<E> node) {
-        if (parents.isEmpty()) {
-            return null;
+    /**
+     * Find the closest element to the given one on one side of it.
+     * @param greater look for the least greater element (ceiling, higher) or the greatest smaller one (floor, lower)
+     * @param inclusive if the element itself is accepted
+     * @return node with the closest element or null if there is none
+     */
+    public static <E> Node<E> closest(Node<E> node, E el, Comparator<? super E> comparator, boolean greater,
+                                      boolean inclusive) {
+        Node<E> result = null;
+        while (node != null) {
+            int comparisonResult = comparator.compare(el, node.value());
+            if (comparisonResult == 0 && inclusive) {
+                return node;
+            }
+            if (greater ? comparisonResult < 0 : comparisonResult > 0) {
+                result = node;
+                node = greater ? node.left() : node.right();
+            } else {
+                node = greater ? node.right() : node.left();
+            }
         }
-
-        Node<E> parent = parents.getLast();
-        return parent.getDirectionOfChild(node);
+        return result;
     }
 
-    private static <E> Node<E> updateParentsUpToRootAdd(LinkedList<Node<E>> parents, Node<E> node, Node.Direction nodeDirection) {
-        while (!parents.isEmpty()) {
-            Node<E> parent = parents.removeLast();
-            Node<E> newParent = Node.builderFrom(parent)
-                .child(node, nodeDirection)
-                .build();
-            nodeDirection = getNodeDirection(parents, parent);
-            node = newParent;
+    /**
+     * @param index index of the element in sorted order, must be in [0, size(node))
+     * @return node with the element
+     */
+    public static <E> Node<E> select(Node<E> node, int index) {
+        while (true) {
+            int leftSize = Node.size(node.left());
+            if (index == leftSize) {
+                return node;
+            }
+            if (index < leftSize) {
+                node = node.left();
+            } else {
+                index -= leftSize + 1;
+                node = node.right();
+            }
         }
-        return node;
     }
 
-    public static <E> Node.NodeWithDirection<E> createNodeWithDirection(LinkedList<Node.NodeWithDirection<E>> parents, Node<E> node) {
-        Node.Direction direction = null;
-        if (!parents.isEmpty()) {
-            Node.NodeWithDirection<E> parent = parents.getLast();
-            direction = parent.node().getDirectionOfChild(node);
+    /**
+     * @return number of elements less than the given one
+     */
+    public static <E> int rank(Node<E> node, E el, Comparator<? super E> comparator) {
+        int rank = 0;
+        while (node != null) {
+            int comparisonResult = comparator.compare(el, node.value());
+            if (comparisonResult <= 0) {
+                if (comparisonResult == 0) {
+                    return rank + Node.size(node.left());
+                }
+                node = node.left();
+            } else {
+                rank += Node.size(node.left()) + 1;
+                node = node.right();
+            }
         }
-        return new Node.NodeWithDirection<>(node, direction);
+        return rank;
     }
 
-    private static <E> Node<E> updateParentsUpToRootDelete(LinkedList<Node.NodeWithDirection<E>> parents, Node<E> node, Node.Direction nodeDirection) {
-        while (!parents.isEmpty()) {
-            Node.NodeWithDirection<E> parentWithDir = parents.removeLast();
-            node = Node.builderFrom(parentWithDir.node())
-                .child(node, nodeDirection)
-                .build();
-            nodeDirection = parentWithDir.direction();
-        }
-        return node;
+    public static <E> Node<E> blacken(Node<E> node) {
+        return isBlack(node) ? node : node.withColor(true, null);
     }
 
     public static <E> int checkIsRedBlackTree(Node<E> node, int numOfBlackNodes) {
@@ -299,6 +441,12 @@ class TreeUtils {
             return numOfBlackNodes;
         }
 
+        if (node.blackHeight() != Node.blackHeight(node.left()) + (node.isBlack() ? 1 : 0)
+            || node.size() != Node.size(node.left()) + Node.size(node.right()) + 1)
+        {
+            return -1;
+        }
+
         if (!node.isBlack()) {
             if (!isBlack(node.left()) || !isBlack(node.right())) {
                 return -1;
@@ -0,0 +1,106 @@
+package io.whitecloud.impl;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Streaming writer of versions of {@link PersistentRedBlackTree} that keeps the structural sharing between them.
+ * Every distinct node is written once, after its children, and gets the next number; nodes written before,
+ * with this or any earlier version, are referenced by the difference of numbers instead of being written again.
+ * So a version made by a few changes of a written one costs only the nodes of the copied paths.
+ *
+ * <p>Format: a header (magic number and format version), then a sequence of entries, each starting with a flags
+ * byte. A node entry has the color and the presence of each child in the flags, followed by the element in the
+ * format of the codec and a varint reference per present child. A version entry has only the {@code VERSION}
+ * flag and a varint reference to the root, 0 for an empty tree. The stream ends with an {@code END} entry.
+ * Use {@link TreeReader} to read the versions back.
+ */
+public final class TreeWriter<E> implements Closeable, Flushable {
+    static final int MAGIC = 0x50525442;
+    static final int FORMAT = 1;
+
+    static final int BLACK = 1;
+    static final int LEFT = 2;
+    static final int RIGHT = 4;
+    static final int VERSION = 8;
+    static final int END = 16;
+
+    private final DataOutputStream out;
+    private final ElementCodec<? super E> codec;
+    private final Map<Node<E>, Integer> ids = new IdentityHashMap<>();
+    private int nextId = 1;
+
+    public TreeWriter(OutputStream out, ElementCodec<? super E> codec) throws IOException {
+        this.out = new DataOutputStream(new BufferedOutputStream(out));
+        this.codec = codec;
+        this.out.writeInt(MAGIC);
+        this.out.writeByte(FORMAT);
+    }
+
+    /**
+     * Write the nodes of the version that were not written yet, then the version itself.
+     * @param tree version to write
+     */
+    public void write(PersistentRedBlackTree<? extends E> tree) throws IOException {
+        @SuppressWarnings("unchecked")
+        Node<E> root = (Node<E>) tree.root();
+        writeNode(root);
+        out.writeByte(VERSION);
+        writeVarInt(root == null ? 0 : nextId - ids.get(root));
+    }
+
+    /**
+     * @return number of distinct nodes written so far
+     */
+    public int nodeCount() {
+        return nextId - 1;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    /**
+     * Write the end of the stream and close it.
+     */
+    @Override
+    public void close() throws IOException {
+        out.writeByte(END);
+        out.close();
+    }
+
+    private void writeNode(Node<E> node) throws IOException {
+        if (node == null || ids.containsKey(node)) {
+            return;
+        }
+        writeNode(node.left());
+        writeNode(node.right());
+
+        int id = nextId++;
+        int flags = (node.isBlack() ? BLACK : 0) | (node.left() != null ? LEFT : 0) | (node.right() != null ? RIGHT : 0);
+        out.writeByte(flags);
+        codec.write(node.value(), out);
+        if (node.left() != null) {
+            writeVarInt(id - ids.get(node.left()));
+        }
+        if (node.right() != null) {
+            writeVarInt(id - ids.get(node.right()));
+        }
+        ids.put(node, id);
+    }
+
+    private void writeVarInt(int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+}
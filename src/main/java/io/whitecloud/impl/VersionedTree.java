@@ -0,0 +1,298 @@
+package io.whitecloud.impl;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.UnaryOperator;
+
+/**
+ * History of versions of a {@link PersistentRedBlackTree}.
+ * Every change that modifies the tree makes a new version with the next number, and any retained version
+ * can be looked up by its number in O(1). Old versions are dropped from the history by a {@link RetentionPolicy},
+ * except the ones tagged with a name, which are kept until untagged.
+ * The policy is applied on every new version and on every read, so expired versions are dropped
+ * even from a history that is only read.
+ * Versions share nodes, so memory is bounded by the nodes of the retained versions; {@link #sharing} and
+ * {@link #retainedNodes} tell how many nodes they take.
+ * The history is not thread-safe.
+ */
+public final class VersionedTree<E> {
+    /**
+     * @param number number of the version, starting from 0 for the initial tree
+     * @param created time the version was made
+     * @param tree tree of the version
+     */
+    public record Version<E>(long number, Instant created, PersistentRedBlackTree<E> tree) {}
+
+    /**
+     * Nodes of a version, split into the ones also reachable from other retained versions and its own.
+     * @param version number of the version
+     * @param shared nodes shared with other retained versions
+     * @param unique nodes that would be freed with the version
+     */
+    public record NodeSharing(long version, int shared, int unique) {}
+
+    private final RetentionPolicy policy;
+    private final Clock clock;
+    // ordered by number, so the oldest versions are trimmed first
+    private final LinkedHashMap<Long, Version<E>> history = new LinkedHashMap<>();
+    private final Map<String, Version<E>> tags = new HashMap<>();
+    private final Map<Long, Version<E>> tagged = new HashMap<>();
+    private Version<E> current;
+    // references to every node of the retained versions from their parents and the roots,
+    // made by the first request of node statistics and maintained on every change afterwards
+    private Map<Node<E>, Integer> references;
+
+    /**
+     * History keeping all versions of an initially empty tree ordered naturally.
+     */
+    public VersionedTree() {
+        this(new PersistentRedBlackTree<>(), RetentionPolicy.all());
+    }
+
+    public VersionedTree(PersistentRedBlackTree<E> initial, RetentionPolicy policy) {
+        this(initial, policy, Clock.systemUTC());
+    }
+
+    /**
+     * @param initial tree of the version 0
+     * @param policy policy applied after every new version
+     * @param clock clock for creation times of the versions
+     */
+    public VersionedTree(PersistentRedBlackTree<E> initial, RetentionPolicy policy, Clock clock) {
+        this.policy = policy;
+        this.clock = clock;
+        this.current = new Version<>(0, clock.instant(), initial);
+        history.put(0L, current);
+    }
+
+    /**
+     * @return number of the new version, or of the current one if the element already existed
+     */
+    public long add(E el) {
+        return update(tree -> tree.add(el));
+    }
+
+    /**
+     * @return number of the new version, or of the current one if the element didn't exist
+     */
+    public long delete(E el) {
+        return update(tree -> tree.delete(el));
+    }
+
+    /**
+     * Make a new version by any number of changes of the current tree.
+     * @param change function returning a changed tree, or the same tree or null if nothing changed
+     * @return number of the new version, or of the current one if nothing changed
+     */
+    public long update(UnaryOperator<PersistentRedBlackTree<E>> change) {
+        PersistentRedBlackTree<E> tree = change.apply(current.tree());
+        if (tree == null || tree == current.tree()) {
+            return current.number();
+        }
+        current = new Version<>(current.number() + 1, clock.instant(), tree);
+        history.put(current.number(), current);
+        retain(tree.root());
+        trim();
+        return current.number();
+    }
+
+    public PersistentRedBlackTree<E> current() {
+        trim();
+        return current.tree();
+    }
+
+    public long currentNumber() {
+        return current.number();
+    }
+
+    /**
+     * @param number number of a retained version
+     * @throws NoSuchElementException if the version was dropped or never existed
+     */
+    public PersistentRedBlackTree<E> version(long number) {
+        trim();
+        Version<E> version = history.get(number);
+        if (version == null) {
+            version = tagged.get(number);
+        }
+        if (version == null) {
+            throw new NoSuchElementException("Version " + number + " is not retained");
+        }
+        return version.tree();
+    }
+
+    /**
+     * @return retained versions in the history, from the oldest, without the tagged versions dropped from it
+     */
+    public Iterable<Version<E>> history() {
+        trim();
+        return Collections.unmodifiableCollection(history.values());
+    }
+
+    /**
+     * Tag the current version, keeping it regardless of the retention policy.
+     * A version tagged before with the same name is untagged.
+     * @return number of the tagged version
+     */
+    public long tag(String name) {
+        untag(name);
+        tags.put(name, current);
+        tagged.put(current.number(), current);
+        return current.number();
+    }
+
+    /**
+     * @throws NoSuchElementException if there is no such tag
+     */
+    public PersistentRedBlackTree<E> snapshot(String name) {
+        Version<E> version = tags.get(name);
+        if (version == null) {
+            throw new NoSuchElementException("No snapshot " + name);
+        }
+        return version.tree();
+    }
+
+    /**
+     * Remove the tag. The version stays only if it is still in the history.
+     * @return if the tag existed
+     */
+    public boolean untag(String name) {
+        Version<E> version = tags.remove(name);
+        if (version == null) {
+            return false;
+        }
+        if (!tags.containsValue(version)) {
+            tagged.remove(version.number());
+            if (!history.containsKey(version.number())) {
+                release(version.tree().root());
+            }
+        }
+        return true;
+    }
+
+    public Set<String> tags() {
+        return Collections.unmodifiableSet(tags.keySet());
+    }
+
+    /**
+     * Count the nodes of a version shared with the other retained versions, in time linear in the number
+     * of its own nodes; the first request of node statistics counts the references of all retained nodes once.
+     * @param number number of a retained version
+     */
+    public NodeSharing sharing(long number) {
+        Node<E> root = version(number).root();
+        Map<Node<E>, Integer> references = references();
+        // release the version on the side: its own nodes are the ones losing all their references
+        Map<Node<E>, Integer> released = new IdentityHashMap<>();
+        int unique = 0;
+        ArrayDeque<Node<E>> stack = new ArrayDeque<>();
+        if (root != null) {
+            stack.push(root);
+        }
+        while (!stack.isEmpty()) {
+            Node<E> node = stack.pop();
+            if (released.merge(node, 1, Integer::sum).intValue() != references.get(node)) {
+                continue;
+            }
+            unique++;
+            if (node.left() != null) {
+                stack.push(node.left());
+            }
+            if (node.right() != null) {
+                stack.push(node.right());
+            }
+        }
+        return new NodeSharing(number, Node.size(root) - unique, unique);
+    }
+
+    /**
+     * @return number of distinct nodes of all retained versions
+     */
+    public int retainedNodes() {
+        trim();
+        return references().size();
+    }
+
+    private Map<Node<E>, Integer> references() {
+        if (references == null) {
+            references = new IdentityHashMap<>();
+            Map<Long, Version<E>> retained = new HashMap<>(history);
+            retained.putAll(tagged);
+            for (Version<E> version : retained.values()) {
+                retain(version.tree().root());
+            }
+        }
+        return references;
+    }
+
+    /**
+     * Count a new reference to the node, and to its children if the node wasn't retained before.
+     */
+    private void retain(Node<E> root) {
+        if (references == null || root == null) {
+            return;
+        }
+        ArrayDeque<Node<E>> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            Node<E> node = stack.pop();
+            if (references.merge(node, 1, Integer::sum) > 1) {
+                continue;
+            }
+            if (node.left() != null) {
+                stack.push(node.left());
+            }
+            if (node.right() != null) {
+                stack.push(node.right());
+            }
+        }
+    }
+
+    /**
+     * Drop a reference to the node, and to its children if it was the last one.
+     */
+    private void release(Node<E> root) {
+        if (references == null || root == null) {
+            return;
+        }
+        ArrayDeque<Node<E>> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            Node<E> node = stack.pop();
+            if (references.merge(node, -1, Integer::sum) > 0) {
+                continue;
+            }
+            references.remove(node);
+            if (node.left() != null) {
+                stack.push(node.left());
+            }
+            if (node.right() != null) {
+                stack.push(node.right());
+            }
+        }
+    }
+
+    private void trim() {
+        Instant now = clock.instant();
+        Iterator<Version<E>> iterator = history.values().iterator();
+        while (iterator.hasNext()) {
+            Version<E> version = iterator.next();
+            if (version == current || policy.retains(version, current.number(), now)) {
+                return;
+            }
+            iterator.remove();
+            if (!tagged.containsKey(version.number())) {
+                release(version.tree().root());
+            }
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package io.whitecloud;
+
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import io.whitecloud.impl.AtomicRedBlackTree;
+import io.whitecloud.impl.PersistentRedBlackTree;
+import org.junit.jupiter.api.Test;
+
+public class AtomicRedBlackTreeTest {
+    @Test
+    public void testSingleThread() {
+        var tree = new AtomicRedBlackTree<Integer>();
+        assertTrue(tree.add(1));
+        assertFalse(tree.add(1));
+        assertTrue(tree.add(2));
+        var snapshot = tree.get();
+        assertTrue(tree.delete(1));
+        assertFalse(tree.delete(1));
+        assertTrue(snapshot.contains(1));
+        assertFalse(tree.contains(1));
+        assertEquals(1, tree.size());
+
+        assertNull(tree.update(current -> current));
+        assertNotNull(tree.update(current -> current.asTransient().add(3).add(4).toPersistent()));
+        assertEquals(3, tree.size());
+        assertEquals(new AtomicRedBlackTree.ContentionStats(4, 0, 0), tree.stats());
+        tree.resetStats();
+        assertEquals(new AtomicRedBlackTree.ContentionStats(0, 0, 0), tree.stats());
+    }
+
+    @Test
+    public void testConcurrentWriters() throws Exception {
+        int threads = 4;
+        int perThread = 5_000;
+        var tree = new AtomicRedBlackTree<>(new PersistentRedBlackTree<Integer>());
+        var start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < perThread; i++) {
+                        assertTrue(tree.add(i * threads + thread));
+                        // readers always see a valid version
+                        assertTrue(tree.get().size() > i);
+                    }
+                    for (int i = 0; i < perThread; i += 2) {
+                        assertTrue(tree.delete(i * threads + thread));
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        var result = tree.get();
+        assertTrue(result.checkIsRedBlackTree());
+        assertEquals(threads * perThread / 2, result.size());
+        for (int i = 0; i < perThread * threads; i++) {
+            assertEquals((i / threads) % 2 == 1, result.contains(i), String.valueOf(i));
+        }
+        var stats = tree.stats();
+        assertEquals(threads * perThread * 3 / 2, stats.updates());
+        assertTrue(stats.retries() >= stats.failedCas());
+    }
+}
@@ -0,0 +1,127 @@
+package io.whitecloud;
+
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import io.whitecloud.impl.AtomicRedBlackTree;
+import io.whitecloud.impl.CombiningRedBlackTree;
+import io.whitecloud.impl.PersistentRedBlackTree;
+import org.junit.jupiter.api.Test;
+
+public class CombiningRedBlackTreeTest {
+    @Test
+    public void testSingleThread() {
+        var tree = new CombiningRedBlackTree<Integer>();
+        assertTrue(tree.add(1));
+        assertFalse(tree.add(1));
+        var snapshot = tree.get();
+        assertTrue(tree.delete(1));
+        assertFalse(tree.delete(1));
+        assertTrue(snapshot.contains(1));
+        assertEquals(0, tree.get().size());
+        assertEquals(new CombiningRedBlackTree.CombiningStats(4, 4), tree.stats());
+        // batches without changes publish nothing
+        assertEquals(2, tree.handle().stats().updates());
+    }
+
+    @Test
+    public void testConcurrentWriters() throws Exception {
+        int threads = 8;
+        int perThread = 5_000;
+        var tree = new CombiningRedBlackTree<Integer>();
+        var start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < perThread; i++) {
+                        assertTrue(tree.add(i * threads + thread));
+                        assertFalse(tree.add(i * threads + thread));
+                    }
+                    for (int i = 0; i < perThread; i += 2) {
+                        assertTrue(tree.delete(i * threads + thread));
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        var result = tree.get();
+        assertTrue(result.checkIsRedBlackTree());
+        assertEquals(threads * perThread / 2, result.size());
+        for (int i = 0; i < perThread * threads; i++) {
+            assertEquals((i / threads) % 2 == 1, result.contains(i), String.valueOf(i));
+        }
+        var stats = tree.stats();
+        assertEquals(threads * perThread * 5 / 2, stats.operations());
+        assertTrue(stats.batches() <= stats.operations());
+    }
+
+    private static final Comparator<Integer> REJECTING_NEGATIVE = (first, second) -> {
+        if (first < 0 || second < 0) {
+            throw new IllegalArgumentException("Negative element");
+        }
+        return Integer.compare(first, second);
+    };
+
+    @Test
+    public void testFailedOperation() {
+        var tree = new CombiningRedBlackTree<>(
+            new AtomicRedBlackTree<>(new PersistentRedBlackTree<>(REJECTING_NEGATIVE).add(0)));
+        assertThrows(IllegalArgumentException.class, () -> tree.add(-1));
+        assertThrows(NullPointerException.class, () -> tree.add(null));
+        assertTrue(tree.add(1));
+        assertEquals(2, tree.get().size());
+    }
+
+    @Test
+    public void testFailuresStayWithTheirThreads() throws Exception {
+        int threads = 8;
+        int perThread = 2_000;
+        var tree = new CombiningRedBlackTree<>(
+            new AtomicRedBlackTree<>(new PersistentRedBlackTree<>(REJECTING_NEGATIVE).add(0)));
+        var start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 1; i <= perThread; i++) {
+                        if (thread % 2 == 0) {
+                            int el = -i;
+                            assertThrows(IllegalArgumentException.class, () -> tree.add(el));
+                        } else {
+                            assertTrue(tree.add(i * threads + thread));
+                        }
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(threads / 2 * perThread + 1, tree.get().size());
+        assertTrue(tree.get().checkIsRedBlackTree());
+    }
+}
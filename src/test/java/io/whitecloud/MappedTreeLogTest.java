@@ -0,0 +1,81 @@
+package io.whitecloud;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import io.whitecloud.impl.MappedTreeLog;
+import io.whitecloud.impl.OffHeapRedBlackTree;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class MappedTreeLogTest {
+    @TempDir
+    Path directory;
+
+    private static List<Long> toList(OffHeapRedBlackTree tree) {
+        List<Long> list = new ArrayList<>();
+        tree.iterator(PersistentTree.Order.InOrder).forEachRemaining(list::add);
+        return list;
+    }
+
+    @Test
+    public void testReopen() throws IOException {
+        Path file = directory.resolve("tree.log");
+        List<List<Long>> expected = new ArrayList<>();
+        var random = new Random();
+        try (var log = MappedTreeLog.open(file, 12)) {
+            assertEquals(0, log.versions());
+            var tree = log.emptyTree();
+            for (int version = 0; version < 20; version++) {
+                for (int i = 0; i < 300; i++) {
+                    long key = random.nextInt(2000);
+                    var next = random.nextInt(4) > 0 ? tree.add(key) : tree.delete(key);
+                    tree = next == null ? tree : next;
+                }
+                assertEquals(version, log.commit(tree));
+                expected.add(toList(tree));
+            }
+            // not committed, dropped on reopen
+            tree.add(-1L);
+        }
+
+        try (var log = MappedTreeLog.open(file)) {
+            assertEquals(20, log.versions());
+            for (int version = 0; version < 20; version++) {
+                var tree = log.version(version);
+                assertTrue(tree.checkIsRedBlackTree());
+                assertEquals(expected.get(version), toList(tree));
+            }
+            assertFalse(log.latest().contains(-1L));
+            for (long key : expected.get(19)) {
+                assertTrue(log.latest().contains(key));
+            }
+
+            var changed = log.latest().add(-2L);
+            assertEquals(20, log.commit(changed));
+        }
+
+        try (var log = MappedTreeLog.open(file)) {
+            assertEquals(21, log.versions());
+            assertTrue(log.latest().contains(-2L));
+            assertFalse(log.version(19).contains(-2L));
+            assertThrows(IndexOutOfBoundsException.class, () -> log.version(21));
+        }
+    }
+
+    @Test
+    public void testRejectsOtherFiles() throws IOException {
+        Path file = directory.resolve("other");
+        Files.writeString(file, "not a tree log at all, just some text that is long enough for a header........");
+        assertThrows(IOException.class, () -> MappedTreeLog.open(file));
+
+        try (var log = MappedTreeLog.open(directory.resolve("tree.log"), 12)) {
+            var tree = new OffHeapRedBlackTree(new io.whitecloud.impl.DirectNodeStorage(12)).add(1L);
+            assertThrows(IllegalArgumentException.class, () -> log.commit(tree));
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package io.whitecloud;
+
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import io.whitecloud.impl.NodeInterner;
+import io.whitecloud.impl.PersistentRedBlackTree;
+import org.junit.jupiter.api.Test;
+
+public class NodeInternerTest {
+    private static List<Integer> range(int size) {
+        return IntStream.range(0, size).boxed().toList();
+    }
+
+    private static <E> List<E> preOrder(PersistentRedBlackTree<E> tree) {
+        List<E> list = new ArrayList<>();
+        tree.iterator(PersistentTree.Order.PreOrder).forEachRemaining(list::add);
+        return list;
+    }
+
+    @Test
+    public void testRebuiltTreesCollapse() {
+        var interner = new NodeInterner<Integer>();
+        var first = interner.intern(PersistentRedBlackTree.fromSorted(range(1000)));
+        assertEquals(new NodeInterner.Stats(1000, 0, 1000), interner.stats());
+        // interning again finds the root at once
+        assertSame(first, interner.intern(first));
+        assertEquals(1000, interner.stats().lookups());
+
+        var rebuilt = PersistentRedBlackTree.fromSorted(range(1000));
+        var second = interner.intern(rebuilt);
+        assertEquals(first, second);
+        assertSame(second, interner.intern(second));
+        var stats = interner.stats();
+        // every node of the rebuilt tree is replaced and the table doesn't grow
+        assertEquals(1000, stats.size());
+        assertEquals(2000, stats.lookups());
+        assertEquals(1000, stats.hits());
+        assertEquals(0.5, stats.hitRate());
+        assertEquals(1000L * NodeInterner.NODE_BYTES, stats.savedBytes());
+
+        interner.resetStats();
+        assertEquals(0, interner.stats().lookups());
+    }
+
+    @Test
+    public void testVersions() {
+        var interner = new NodeInterner<Integer>();
+        var tree = interner.intern(PersistentRedBlackTree.fromSorted(range(10_000)));
+        interner.resetStats();
+
+        var changed = tree.add(-1).delete(5000);
+        var interned = interner.intern(changed);
+        assertEquals(preOrder(changed), preOrder(interned));
+        assertTrue(interned.checkIsRedBlackTree());
+        // only the copied paths are looked up
+        assertTrue(interner.stats().lookups() < 100, interner.stats().toString());
+
+        // the same changes made again give the same nodes
+        long size = interner.stats().size();
+        long hits = interner.stats().hits();
+        var again = interner.intern(tree.add(-1).delete(5000));
+        assertEquals(interned, again);
+        assertEquals(size, interner.stats().size());
+        assertTrue(interner.stats().hits() > hits);
+    }
+
+    @Test
+    public void testDifferentShapesStayApart() {
+        var interner = new NodeInterner<Integer>();
+        PersistentRedBlackTree<Integer> added = new PersistentRedBlackTree<>();
+        for (int i = 0; i < 100; i++) {
+            added = added.add(i);
+        }
+        var built = interner.intern(PersistentRedBlackTree.fromSorted(range(100)));
+        var internedAdded = interner.intern(added);
+        assertEquals(preOrder(added), preOrder(internedAdded));
+        assertEquals(built, internedAdded);
+        assertTrue(interner.stats().hits() > 0);
+    }
+
+    @Test
+    public void testConcurrentInterning() throws Exception {
+        var interner = new NodeInterner<Integer>();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<PersistentRedBlackTree<Integer>>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(executor.submit(() -> interner.intern(PersistentRedBlackTree.fromSorted(range(5000)))));
+            }
+            var first = futures.get(0).get();
+            for (var future : futures) {
+                assertEquals(first, future.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(5000, interner.stats().size());
+    }
+}
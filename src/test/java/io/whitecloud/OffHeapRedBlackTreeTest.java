@@ -0,0 +1,134 @@
+package io.whitecloud;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import io.whitecloud.impl.DirectNodeStorage;
+import io.whitecloud.impl.NodeStorage;
+import io.whitecloud.impl.OffHeapRedBlackTree;
+import io.whitecloud.impl.PersistentRedBlackTree;
+import org.junit.jupiter.api.Test;
+
+public class OffHeapRedBlackTreeTest {
+    private static List<Long> toList(Iterator<Long> iterator) {
+        List<Long> list = new ArrayList<>();
+        iterator.forEachRemaining(list::add);
+        return list;
+    }
+
+    @Test
+    public void testSameShapeAsHeapTree() {
+        var random = new Random();
+        var offHeap = new OffHeapRedBlackTree(new DirectNodeStorage(10));
+        var heap = new PersistentRedBlackTree<Long>();
+        for (int i = 0; i < 5000; i++) {
+            long key = random.nextInt(1000) - 500;
+            OffHeapRedBlackTree nextOffHeap;
+            PersistentRedBlackTree<Long> nextHeap;
+            if (random.nextInt(3) > 0) {
+                nextOffHeap = offHeap.add(key);
+                nextHeap = heap.add(key);
+            } else {
+                nextOffHeap = offHeap.delete(key);
+                nextHeap = heap.delete(key);
+            }
+            assertEquals(nextHeap == null, nextOffHeap == null);
+            if (nextHeap != null) {
+                heap = nextHeap;
+                offHeap = nextOffHeap;
+            }
+            assertEquals(heap.contains(key), offHeap.contains(key));
+        }
+        assertTrue(offHeap.checkIsRedBlackTree());
+        assertEquals(heap.size(), offHeap.size());
+        for (var order : PersistentTree.Order.values()) {
+            assertEquals(toList(heap.iterator(order)), toList(offHeap.iterator(order)));
+        }
+    }
+
+    @Test
+    public void testOldVersionsStayReadable() {
+        var storage = new DirectNodeStorage(10);
+        List<OffHeapRedBlackTree> versions = new ArrayList<>();
+        var tree = new OffHeapRedBlackTree(storage);
+        versions.add(tree);
+        for (long i = 0; i < 200; i++) {
+            tree = tree.add(i * 7 % 200);
+            versions.add(tree);
+        }
+        for (int i = 0; i < versions.size(); i++) {
+            assertEquals(i, versions.get(i).size());
+            assertTrue(versions.get(i).checkIsRedBlackTree());
+        }
+        assertFalse(versions.get(10).contains(10 * 7 % 200));
+        assertTrue(versions.get(11).contains(10 * 7 % 200));
+        assertEquals("[]", versions.get(0).toString());
+        assertEquals("[0, 7, 14]", versions.get(3).toString());
+    }
+
+    @Test
+    public void testCompaction() throws IOException {
+        var storage = new DirectNodeStorage(12);
+        var tree = new OffHeapRedBlackTree(storage);
+        for (long i = 0; i < 1000; i++) {
+            tree = tree.add(i);
+        }
+        var first = tree;
+        var second = first.delete(500L).add(5000L);
+        var expectedFirst = toList(first.iterator(PersistentTree.Order.PreOrder));
+        var expectedSecond = toList(second.iterator(PersistentTree.Order.PreOrder));
+        long used = storage.end();
+
+        var target = new DirectNodeStorage(12);
+        var compacted = OffHeapRedBlackTree.compact(List.of(first, second), target);
+        assertEquals(expectedFirst, toList(compacted.get(0).iterator(PersistentTree.Order.PreOrder)));
+        assertEquals(expectedSecond, toList(compacted.get(1).iterator(PersistentTree.Order.PreOrder)));
+        assertTrue(compacted.get(1).checkIsRedBlackTree());
+
+        // only the nodes of the two versions are left, and the ones they share are copied once
+        assertTrue(target.end() < used / 10);
+        assertTrue(target.end() < 2L * 1000 * 32);
+        assertThrows(IllegalStateException.class, () -> first.add(-1L));
+        assertThrows(IllegalStateException.class, first::size);
+        assertThrows(IllegalStateException.class, () -> second.contains(5000L));
+        assertThrows(IllegalStateException.class, second::toString);
+
+        var changed = compacted.get(1).add(-1L);
+        assertTrue(changed.contains(-1L));
+        assertFalse(compacted.get(1).contains(-1L));
+    }
+
+    @Test
+    public void testFailedCompactionKeepsSource() {
+        var storage = new DirectNodeStorage(10);
+        var tree = new OffHeapRedBlackTree(storage);
+        for (long i = 0; i < 1000; i++) {
+            tree = tree.add(i);
+        }
+        var expected = toList(tree.iterator(PersistentTree.Order.PreOrder));
+        long used = storage.end();
+
+        var target = new NodeStorage(10, 0) {
+            private int chunks;
+
+            @Override
+            protected ByteBuffer newChunk(int index, int size) throws IOException {
+                if (++chunks > 3) {
+                    throw new IOException("Out of space");
+                }
+                return ByteBuffer.allocate(size);
+            }
+        };
+        var versions = List.of(tree);
+        assertThrows(UncheckedIOException.class, () -> OffHeapRedBlackTree.compact(versions, target));
+
+        assertEquals(used, storage.end());
+        assertEquals(expected, toList(tree.iterator(PersistentTree.Order.PreOrder)));
+        assertTrue(tree.checkIsRedBlackTree());
+        assertNotNull(tree.add(-1L));
+    }
+}
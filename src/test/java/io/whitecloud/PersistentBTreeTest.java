@@ -0,0 +1,123 @@
+package io.whitecloud;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import io.whitecloud.impl.PersistentBTree;
+import org.junit.jupiter.api.Test;
+
+public class PersistentBTreeTest {
+    private static <E> List<E> toList(Iterator<E> iterator) {
+        List<E> list = new ArrayList<>();
+        iterator.forEachRemaining(list::add);
+        return list;
+    }
+
+    @Test
+    public void testRandomChanges() {
+        var random = new Random();
+        for (int maxKeys : new int[] {3, 4, 5, 16, 32}) {
+            var tree = new PersistentBTree<Integer>(Comparator.naturalOrder(), maxKeys);
+            TreeSet<Integer> expected = new TreeSet<>();
+            for (int i = 0; i < 20_000; i++) {
+                int el = random.nextInt(3000);
+                if (random.nextInt(3) > 0) {
+                    var next = tree.add(el);
+                    assertEquals(expected.add(el), next != null);
+                    tree = next == null ? tree : next;
+                } else {
+                    var next = tree.delete(el);
+                    assertEquals(expected.remove(el), next != null);
+                    tree = next == null ? tree : next;
+                }
+                assertTrue(tree.contains(el) == expected.contains(el));
+            }
+            assertTrue(tree.checkIsBTree(), "maxKeys " + maxKeys);
+            assertEquals(expected.size(), tree.size());
+            assertEquals(new ArrayList<>(expected), toList(tree.iterator(PersistentTree.Order.InOrder)));
+            for (var order : List.of(PersistentTree.Order.PreOrder, PersistentTree.Order.PostOrder)) {
+                var list = toList(tree.iterator(order));
+                assertEquals(expected.size(), list.size());
+                assertEquals(expected, new TreeSet<>(list));
+            }
+
+            for (Integer el : new ArrayList<>(expected)) {
+                tree = tree.delete(el);
+                assertNotNull(tree);
+            }
+            assertEquals(0, tree.size());
+            assertTrue(tree.checkIsBTree());
+        }
+    }
+
+    @Test
+    public void testPersistence() {
+        var tree = new PersistentBTree<Integer>(Comparator.naturalOrder(), 4);
+        List<PersistentBTree<Integer>> versions = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            tree = tree.add(i * 37 % 100);
+            versions.add(tree);
+        }
+        for (int i = 0; i < 100; i++) {
+            tree = tree.delete(i * 37 % 100);
+        }
+        for (int i = 0; i < versions.size(); i++) {
+            var version = versions.get(i);
+            assertEquals(i + 1, version.size());
+            assertTrue(version.checkIsBTree());
+            for (int j = 0; j < 100; j++) {
+                assertEquals(j <= i, version.contains(j * 37 % 100));
+            }
+        }
+        assertEquals(0, tree.size());
+    }
+
+    @Test
+    public void testOrders() {
+        var tree = new PersistentBTree<Integer>(Comparator.naturalOrder(), 3);
+        for (int i = 1; i <= 7; i++) {
+            tree = tree.add(i);
+        }
+        // [3, 6] over [1, 2], [4, 5], [7] after the splits of 1..7 with 3 keys per node
+        assertEquals(List.of(1, 2, 3, 4, 5, 6, 7), toList(tree.iterator(PersistentTree.Order.InOrder)));
+        assertEquals(List.of(3, 6, 1, 2, 4, 5, 7), toList(tree.iterator(PersistentTree.Order.PreOrder)));
+        assertEquals(List.of(1, 2, 4, 5, 7, 3, 6), toList(tree.iterator(PersistentTree.Order.PostOrder)));
+        assertEquals("[1, 2, 3, 4, 5, 6, 7]", tree.toString());
+        assertTrue(tree.checkIsBTree());
+    }
+
+    @Test
+    public void testEmptyAndComparator() {
+        var empty = new PersistentBTree<String>();
+        assertNull(empty.delete("a"));
+        assertFalse(empty.contains("a"));
+        assertFalse(empty.iterator(PersistentTree.Order.InOrder).hasNext());
+        assertEquals("[]", empty.toString());
+
+        var tree = new PersistentBTree<String>(String.CASE_INSENSITIVE_ORDER, 8).add("b").add("A").add("c");
+        assertNull(tree.add("B"));
+        assertTrue(tree.contains("a"));
+        assertEquals("[A, b, c]", tree.toString());
+        assertThrows(IllegalArgumentException.class, () -> new PersistentBTree<Integer>(Comparator.naturalOrder(), 2));
+    }
+
+    @Test
+    public void testNullElement() {
+        PersistentBTree<Integer> tree = new PersistentBTree<>(Comparator.nullsFirst(Comparator.naturalOrder()), 3);
+        for (int i = 1; i <= 10; i++) {
+            tree = tree.add(i);
+        }
+        tree = tree.add(null);
+        assertTrue(tree.contains(null));
+        var expected = new ArrayList<Integer>();
+        expected.add(null);
+        for (int i = 1; i <= 10; i++) {
+            expected.add(i);
+        }
+        assertEquals(expected, toList(tree.iterator(PersistentTree.Order.InOrder)));
+        for (var order : PersistentTree.Order.values()) {
+            assertEquals(11, toList(tree.iterator(order)).size());
+        }
+    }
+}
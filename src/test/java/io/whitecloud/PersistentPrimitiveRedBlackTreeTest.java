@@ -0,0 +1,93 @@
+package io.whitecloud;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import io.whitecloud.impl.PersistentIntRedBlackTree;
+import io.whitecloud.impl.PersistentLongRedBlackTree;
+import org.junit.jupiter.api.Test;
+
+public class PersistentPrimitiveRedBlackTreeTest {
+    @Test
+    public void testLongTree() {
+        var empty = new PersistentLongRedBlackTree();
+        var tree = empty.add(Long.MAX_VALUE).add(Long.MIN_VALUE).add(0);
+        assertNull(tree.add(0));
+        assertNull(tree.delete(5));
+        assertArrayEquals(new long[] {Long.MIN_VALUE, 0, Long.MAX_VALUE}, tree.toArray());
+        assertTrue(tree.contains(Long.MAX_VALUE));
+        assertFalse(empty.contains(0));
+        assertEquals(0, empty.size());
+        assertArrayEquals(new long[] {Long.MIN_VALUE, Long.MAX_VALUE}, tree.delete(0).toArray());
+        assertEquals(3, tree.size());
+    }
+
+    @Test
+    public void testLongTreeAgainstTreeSet() {
+        var random = new Random();
+        var expected = new TreeSet<Long>();
+        var tree = new PersistentLongRedBlackTree();
+        for (int i = 0; i < 20000; i++) {
+            long key = random.nextInt(3000) * 1_000_000_007L;
+            if (random.nextBoolean()) {
+                var next = tree.add(key);
+                assertEquals(expected.add(key), next != null);
+                tree = next == null ? tree : next;
+            } else {
+                var next = tree.delete(key);
+                assertEquals(expected.remove(key), next != null);
+                tree = next == null ? tree : next;
+            }
+            assertEquals(expected.contains(key), tree.contains(key));
+        }
+        assertTrue(tree.checkIsRedBlackTree());
+        assertEquals(expected.size(), tree.size());
+        assertArrayEquals(expected.stream().mapToLong(Long::longValue).toArray(), tree.toArray());
+
+        for (int i = 0; i < 200; i++) {
+            long from = (random.nextInt(3200) - 100) * 1_000_000_007L;
+            long to = from + random.nextInt(1000) * 1_000_000_007L;
+            boolean fromInclusive = random.nextBoolean();
+            boolean toInclusive = random.nextBoolean();
+
+            List<Long> range = new ArrayList<>();
+            tree.iterator(from, fromInclusive, to, toInclusive).forEachRemaining((long key) -> range.add(key));
+            assertEquals(List.copyOf(expected.subSet(from, fromInclusive, to, toInclusive)), range);
+            assertEquals(expected.headSet(from).size(), tree.rank(from));
+        }
+        for (int i = 0; i < tree.size(); i += 97) {
+            assertEquals(i, tree.rank(tree.get(i)));
+        }
+    }
+
+    @Test
+    public void testIntTreeAgainstTreeSet() {
+        var random = new Random();
+        var expected = new TreeSet<Integer>();
+        var tree = new PersistentIntRedBlackTree();
+        for (int i = 0; i < 20000; i++) {
+            int key = random.nextInt(3000) - 1500;
+            if (random.nextInt(3) > 0) {
+                var next = tree.add(key);
+                assertEquals(expected.add(key), next != null);
+                tree = next == null ? tree : next;
+            } else {
+                var next = tree.delete(key);
+                assertEquals(expected.remove(key), next != null);
+                tree = next == null ? tree : next;
+            }
+        }
+        assertTrue(tree.checkIsRedBlackTree());
+        assertArrayEquals(expected.stream().mapToInt(Integer::intValue).toArray(), tree.toArray());
+
+        List<Integer> range = new ArrayList<>();
+        tree.iterator(-10, false, 10, true).forEachRemaining((int key) -> range.add(key));
+        assertEquals(List.copyOf(expected.subSet(-10, false, 10, true)), range);
+
+        int[] sum = {0};
+        tree.forEach((int key) -> sum[0] += key);
+        assertEquals(expected.stream().mapToInt(Integer::intValue).sum(), sum[0]);
+        assertThrows(NoSuchElementException.class, () -> new PersistentIntRedBlackTree().iterator().nextInt());
+    }
+}
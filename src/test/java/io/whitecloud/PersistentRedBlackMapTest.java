@@ -0,0 +1,93 @@
+package io.whitecloud;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import io.whitecloud.impl.PersistentRedBlackMap;
+import org.junit.jupiter.api.Test;
+
+public class PersistentRedBlackMapTest {
+    @Test
+    public void testPutGetRemove() {
+        var empty = new PersistentRedBlackMap<Integer, String>();
+        var map = empty.put(2, "two").put(1, "one").put(3, "three");
+
+        assertEquals(3, map.size());
+        assertEquals("one", map.get(1));
+        assertEquals("three", map.get(3));
+        assertNull(map.get(4));
+        assertTrue(map.containsKey(2));
+        assertFalse(empty.containsKey(2));
+        assertEquals("{1=one, 2=two, 3=three}", map.toString());
+
+        var removed = map.remove(2);
+        assertEquals("{1=one, 3=three}", removed.toString());
+        assertEquals("{1=one, 2=two, 3=three}", map.toString());
+        assertSame(removed, removed.remove(2));
+        assertThrows(NullPointerException.class, () -> map.put(5, null));
+    }
+
+    @Test
+    public void testValueUpdateKeepsShape() {
+        var map = new PersistentRedBlackMap<Integer, String>();
+        for (int i = 0; i < 100; i++) {
+            map = map.put(i, "v" + i);
+        }
+        String value = map.get(50);
+        assertSame(map, map.put(50, value));
+
+        var updated = map.put(50, "new");
+        assertEquals("new", updated.get(50));
+        assertEquals(value, map.get(50));
+        assertEquals(100, updated.size());
+        assertTrue(updated.checkIsRedBlackTree());
+
+        assertSame(map, map.replace(1000, "missing"));
+        assertEquals("replaced", map.replace(10, "replaced").get(10));
+    }
+
+    @Test
+    public void testCompute() {
+        var map = new PersistentRedBlackMap<String, Integer>();
+        for (String word : "a b a c b a".split(" ")) {
+            map = map.compute(word, (__, count) -> count == null ? 1 : count + 1);
+        }
+        assertEquals("{a=3, b=2, c=1}", map.toString());
+
+        assertEquals("{a=3, c=1}", map.compute("b", (__, ___) -> null).toString());
+        assertSame(map, map.compute("d", (__, ___) -> null));
+    }
+
+    @Test
+    public void testRandomAgainstTreeMap() {
+        var random = new Random();
+        var expected = new TreeMap<Integer, Integer>();
+        var map = new PersistentRedBlackMap<Integer, Integer>();
+        for (int i = 0; i < 20000; i++) {
+            int key = random.nextInt(2000);
+            switch (random.nextInt(4)) {
+                case 0, 1 -> {
+                    int value = random.nextInt(10);
+                    expected.put(key, value);
+                    map = map.put(key, value);
+                }
+                case 2 -> {
+                    expected.remove(key);
+                    map = map.remove(key);
+                }
+                default -> {
+                    expected.compute(key, (__, value) -> value == null || value > 5 ? null : value + 1);
+                    map = map.compute(key, (__, value) -> value == null || value > 5 ? null : value + 1);
+                }
+            }
+            assertEquals(expected.get(key), map.get(key));
+        }
+        assertTrue(map.checkIsRedBlackTree());
+        assertEquals(expected.size(), map.size());
+
+        List<Map.Entry<Integer, Integer>> entries = new ArrayList<>();
+        map.forEach(entries::add);
+        assertEquals(List.copyOf(expected.entrySet()), entries);
+    }
+}
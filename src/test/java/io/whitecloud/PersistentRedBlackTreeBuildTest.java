@@ -0,0 +1,83 @@
+package io.whitecloud;
+
+import java.util.*;
+import java.util.stream.IntStream;
+
+import static io.whitecloud.TestUtils.checkOrdersOfTree;
+import static org.junit.jupiter.api.Assertions.*;
+
+import io.whitecloud.impl.PersistentRedBlackTree;
+import org.junit.jupiter.api.Test;
+
+public class PersistentRedBlackTreeBuildTest {
+    @Test
+    public void testFromSortedAllSizes() {
+        for (int size = 0; size < 300; size++) {
+            List<Integer> values = IntStream.range(0, size).boxed().toList();
+            PersistentRedBlackTree<Integer> tree = PersistentRedBlackTree.fromSorted(values);
+            assertTrue(tree.checkIsRedBlackTree());
+            checkOrdersOfTree(tree, Map.of(PersistentTree.Order.InOrder, values));
+            assertFalse(tree.contains(-1));
+            assertFalse(tree.contains(size));
+        }
+    }
+
+    @Test
+    public void testFromSortedShape() {
+        PersistentRedBlackTree<Integer> tree = PersistentRedBlackTree.fromSorted(new Integer[] {1, 2, 3, 4, 5, 6, 7, 8});
+        assertEquals("b_4(b_2(b_1)(b_3))(b_6(b_5)(b_7()(r_8)))", tree.toString());
+    }
+
+    @Test
+    public void testFromSortedIterable() {
+        Iterable<Integer> values = () -> IntStream.range(0, 1000).iterator();
+        PersistentRedBlackTree<Integer> tree = PersistentRedBlackTree.fromSorted(values);
+        assertTrue(tree.checkIsRedBlackTree());
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(tree.contains(i));
+        }
+    }
+
+    @Test
+    public void testFromSortedRejectsUnsorted() {
+        assertThrows(IllegalArgumentException.class, () -> PersistentRedBlackTree.fromSorted(List.of(1, 3, 2)));
+        assertThrows(IllegalArgumentException.class, () -> PersistentRedBlackTree.fromSorted(List.of(1, 2, 2)));
+    }
+
+    @Test
+    public void testFromUnsorted() {
+        var random = new Random();
+        List<Integer> values = new ArrayList<>();
+        for (int i = 0; i < 10000; i++) {
+            values.add(random.nextInt(5000));
+        }
+
+        PersistentRedBlackTree<Integer> tree = PersistentRedBlackTree.fromUnsorted(values);
+        assertTrue(tree.checkIsRedBlackTree());
+        checkOrdersOfTree(tree, Map.of(PersistentTree.Order.InOrder, List.copyOf(new TreeSet<>(values))));
+    }
+
+    @Test
+    public void testModifyBuiltTree() {
+        PersistentRedBlackTree<Integer> built = PersistentRedBlackTree.fromSorted(IntStream.range(0, 1000).map(i -> 2 * i).boxed().toList());
+        var previous = built;
+        for (int i = 0; i < 1000; i++) {
+            var next = previous.add(2 * i + 1);
+            assertNotNull(next);
+            assertTrue(next.checkIsRedBlackTree());
+            previous = next;
+        }
+        for (int i = 0; i < 1000; i++) {
+            var next = previous.delete(2 * i);
+            assertNotNull(next);
+            assertTrue(next.checkIsRedBlackTree());
+            previous = next;
+        }
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(built.contains(2 * i));
+            assertFalse(built.contains(2 * i + 1));
+            assertFalse(previous.contains(2 * i));
+            assertTrue(previous.contains(2 * i + 1));
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package io.whitecloud;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+import static io.whitecloud.TestUtils.checkOrdersOfTree;
+import static org.junit.jupiter.api.Assertions.*;
+
+import io.whitecloud.impl.ParallelSettings;
+import io.whitecloud.impl.PersistentRedBlackMap;
+import io.whitecloud.impl.PersistentRedBlackTree;
+import org.junit.jupiter.api.Test;
+
+public class PersistentRedBlackTreeComparatorTest {
+    private static final ForkJoinPool POOL = new ForkJoinPool(2);
+
+    record Point(int x, int y) {}
+
+    @Test
+    public void testReverseOrder() {
+        var tree = new PersistentRedBlackTree<Integer>(Comparator.reverseOrder());
+        for (int i = 0; i < 10; i++) {
+            tree = tree.add(i);
+        }
+        assertTrue(tree.checkIsRedBlackTree());
+        checkOrdersOfTree(tree, Map.of(PersistentTree.Order.InOrder, List.of(9, 8, 7, 6, 5, 4, 3, 2, 1, 0)));
+        assertEquals(7, tree.floor(7));
+        assertEquals(6, tree.higher(7));
+        assertEquals(2, tree.rank(7));
+        assertNull(tree.add(3));
+        checkOrdersOfTree(tree.delete(5).subSet(7, true, 2, false),
+                          Map.of(PersistentTree.Order.InOrder, List.of(7, 6, 4, 3)));
+    }
+
+    @Test
+    public void testNotComparableElements() {
+        Comparator<Point> byX = Comparator.comparingInt(Point::x);
+        var tree = PersistentRedBlackTree.fromUnsorted(List.of(new Point(3, 0), new Point(1, 0), new Point(3, 1)), byX);
+        assertEquals(2, tree.size());
+        assertTrue(tree.contains(new Point(1, 5)));
+        assertFalse(tree.contains(new Point(2, 0)));
+        assertSame(byX, tree.comparator());
+
+        var edited = tree.asTransient().add(new Point(2, 0)).delete(new Point(3, 7)).toPersistent();
+        checkOrdersOfTree(edited, Map.of(PersistentTree.Order.InOrder, List.of(new Point(1, 0), new Point(2, 0))));
+
+        assertThrows(IllegalArgumentException.class,
+                     () -> PersistentRedBlackTree.fromSorted(List.of(new Point(2, 0), new Point(1, 0)), byX));
+    }
+
+    @Test
+    public void testSetOperations() {
+        Comparator<String> order = String.CASE_INSENSITIVE_ORDER;
+        var first = PersistentRedBlackTree.fromUnsorted(List.of("a", "B", "c"), order);
+        var second = PersistentRedBlackTree.fromUnsorted(List.of("b", "C", "d"), order);
+
+        checkOrdersOfTree(first.union(second), Map.of(PersistentTree.Order.InOrder, List.of("a", "b", "C", "d")));
+        checkOrdersOfTree(first.intersection(second), Map.of(PersistentTree.Order.InOrder, List.of("b", "C")));
+        checkOrdersOfTree(first.difference(second), Map.of(PersistentTree.Order.InOrder, List.of("a")));
+
+        var settings = new ParallelSettings(POOL, 1);
+        checkOrdersOfTree(first.union(second, settings), Map.of(PersistentTree.Order.InOrder, List.of("a", "b", "C", "d")));
+        checkOrdersOfTree(PersistentRedBlackTree.fromUnsorted(List.of("x", "X", "y"), order, settings),
+                          Map.of(PersistentTree.Order.InOrder, List.of("x", "y")));
+
+        var natural = PersistentRedBlackTree.fromUnsorted(List.of("a", "B", "c"));
+        assertThrows(IllegalArgumentException.class, () -> first.union(natural));
+    }
+
+    @Test
+    public void testMap() {
+        var map = new PersistentRedBlackMap<String, Integer>(String.CASE_INSENSITIVE_ORDER)
+            .put("b", 1)
+            .put("A", 2)
+            .put("B", 3);
+        assertEquals("{A=2, b=3}", map.toString());
+        assertEquals(2, map.get("a"));
+    }
+}
@@ -0,0 +1,70 @@
+package io.whitecloud;
+
+import java.util.*;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import io.whitecloud.impl.PersistentRedBlackTree;
+import io.whitecloud.impl.PersistentRedBlackTree.Change;
+import org.junit.jupiter.api.Test;
+
+public class PersistentRedBlackTreeDiffTest {
+    private static List<Change<Integer>> expectedDiff(PersistentRedBlackTree<Integer> older,
+                                                      PersistentRedBlackTree<Integer> newer)
+    {
+        TreeSet<Integer> first = new TreeSet<>(older.stream().toList());
+        TreeSet<Integer> second = new TreeSet<>(newer.stream().toList());
+        TreeMap<Integer, Change<Integer>> changes = new TreeMap<>();
+        first.stream().filter(el -> !second.contains(el)).forEach(el -> changes.put(el, new Change<>(el, false)));
+        second.stream().filter(el -> !first.contains(el)).forEach(el -> changes.put(el, new Change<>(el, true)));
+        return new ArrayList<>(changes.values());
+    }
+
+    @Test
+    public void testVersions() {
+        var random = new Random();
+        var tree = PersistentRedBlackTree.fromSorted(IntStream.range(0, 10_000).boxed().toList());
+        for (int round = 0; round < 50; round++) {
+            var older = tree;
+            int changes = random.nextInt(20);
+            for (int i = 0; i < changes; i++) {
+                int el = random.nextInt(12_000);
+                var next = random.nextBoolean() ? tree.add(el) : tree.delete(el);
+                tree = next == null ? tree : next;
+            }
+            assertEquals(expectedDiff(older, tree), older.diff(tree).toList());
+            assertEquals(expectedDiff(tree, older), tree.diff(older).toList());
+
+            List<Integer> removed = new ArrayList<>();
+            List<Integer> added = new ArrayList<>();
+            older.diff(tree, removed::add, added::add);
+            var expected = expectedDiff(older, tree);
+            assertEquals(expected.stream().filter(Change::added).map(Change::element).toList(), added);
+            assertEquals(expected.stream().filter(change -> !change.added()).map(Change::element).toList(), removed);
+        }
+        assertEquals(0, tree.diff(tree).count());
+    }
+
+    @Test
+    public void testUnrelatedTrees() {
+        var random = new Random();
+        for (int round = 0; round < 20; round++) {
+            var first = PersistentRedBlackTree.fromUnsorted(random.ints(random.nextInt(2000), 0, 3000).boxed().toList());
+            var second = PersistentRedBlackTree.fromUnsorted(random.ints(random.nextInt(2000), 0, 3000).boxed().toList());
+            assertEquals(expectedDiff(first, second), first.diff(second).toList());
+        }
+        var empty = new PersistentRedBlackTree<Integer>();
+        var tree = empty.add(1).add(2);
+        assertEquals(List.of(new Change<>(1, true), new Change<>(2, true)), empty.diff(tree).toList());
+        assertEquals(List.of(new Change<>(1, false), new Change<>(2, false)), tree.diff(empty).toList());
+        assertEquals(0, empty.diff(empty).count());
+    }
+
+    @Test
+    public void testDifferentOrders() {
+        var natural = new PersistentRedBlackTree<Integer>().add(1);
+        var reversed = new PersistentRedBlackTree<Integer>(Comparator.reverseOrder()).add(1);
+        assertThrows(IllegalArgumentException.class, () -> natural.diff(reversed));
+    }
+}
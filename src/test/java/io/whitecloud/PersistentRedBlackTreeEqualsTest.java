@@ -0,0 +1,120 @@
+package io.whitecloud;
+
+import java.util.*;
+import java.util.stream.IntStream;
+
+import static io.whitecloud.TestUtils.EMPTY;
+import static org.junit.jupiter.api.Assertions.*;
+
+import io.whitecloud.impl.PersistentRedBlackTree;
+import org.junit.jupiter.api.Test;
+
+public class PersistentRedBlackTreeEqualsTest {
+    @Test
+    public void testSetSemantics() {
+        var random = new Random();
+        var elements = random.ints(5000, 0, 10_000).boxed().toList();
+        PersistentRedBlackTree<Integer> added = EMPTY;
+        for (Integer el : elements) {
+            added = Objects.requireNonNullElse(added.add(el), added);
+        }
+        var built = PersistentRedBlackTree.fromUnsorted(elements);
+        var set = new TreeSet<>(elements);
+
+        assertEquals(added, built);
+        assertEquals(built, added);
+        assertEquals(set.hashCode(), added.hashCode());
+        assertEquals(set.hashCode(), built.hashCode());
+
+        Integer missing = IntStream.range(0, 10_000).filter(i -> !set.contains(i)).findFirst().orElseThrow();
+        var changed = added.delete(set.first()).add(missing);
+        assertNotEquals(added, changed);
+        assertNotEquals(changed, built);
+        assertEquals(changed.delete(missing).add(set.first()), built);
+
+        assertEquals(EMPTY, new PersistentRedBlackTree<Integer>());
+        assertEquals(0, EMPTY.hashCode());
+        assertNotEquals(EMPTY, added);
+        assertNotEquals(added, set);
+        assertNotEquals(null, added);
+    }
+
+    @Test
+    public void testHashAfterChanges() {
+        var random = new Random();
+        PersistentRedBlackTree<Integer> tree = EMPTY;
+        Set<Integer> expected = new HashSet<>();
+        for (int i = 0; i < 10_000; i++) {
+            int el = random.nextInt(3000);
+            if (random.nextBoolean()) {
+                tree = Objects.requireNonNullElse(tree.add(el), tree);
+                expected.add(el);
+            } else {
+                tree = Objects.requireNonNullElse(tree.delete(el), tree);
+                expected.remove(el);
+            }
+        }
+        assertEquals(expected.hashCode(), tree.hashCode());
+
+        var edited = tree.asTransient();
+        for (int i = 0; i < 1000; i++) {
+            int el = random.nextInt(3000);
+            if (random.nextBoolean()) {
+                edited.add(el);
+                expected.add(el);
+            } else {
+                edited.delete(el);
+                expected.remove(el);
+            }
+        }
+        assertEquals(expected.hashCode(), edited.toPersistent().hashCode());
+        assertEquals(new PersistentRedBlackTree<Integer>().union(tree).intersection(tree), tree);
+    }
+
+    @Test
+    public void testHashCachedAcrossVersions() {
+        var zero = EMPTY.add(1).add(-1);
+        assertEquals(0, zero.hashCode());
+        assertEquals(0, zero.hashCode());
+        assertEquals(5, zero.add(5).hashCode());
+
+        PersistentRedBlackTree<Integer> tree = EMPTY;
+        Set<Integer> expected = new HashSet<>();
+        for (int i = 0; i < 1000; i++) {
+            tree = tree.add(i);
+            expected.add(i);
+            if (i % 100 == 0) {
+                // subtrees hashed here are shared by the later versions
+                assertEquals(expected.hashCode(), tree.hashCode());
+            }
+        }
+        var edited = tree.asTransient();
+        edited.delete(500);
+        edited.add(-500);
+        expected.remove(500);
+        expected.add(-500);
+        assertEquals(expected.hashCode(), edited.toPersistent().hashCode());
+    }
+
+    @Test
+    public void testHashMapKeys() {
+        Map<PersistentRedBlackTree<String>, Integer> versions = new HashMap<>();
+        var tree = new PersistentRedBlackTree<String>().add("a").add("b");
+        versions.put(tree, 1);
+        assertEquals(1, versions.get(new PersistentRedBlackTree<String>().add("b").add("a")));
+        assertNull(versions.get(tree.add("c")));
+        assertEquals(1, versions.get(tree.add("c").delete("c")));
+    }
+
+    @Test
+    public void testDifferentComparators() {
+        var natural = PersistentRedBlackTree.fromSorted(List.of(1, 2, 3));
+        var reversed = PersistentRedBlackTree.fromUnsorted(List.of(1, 2, 3), Comparator.reverseOrder());
+        assertEquals(natural, reversed);
+        assertEquals(natural.hashCode(), reversed.hashCode());
+        assertNotEquals(natural, reversed.delete(2).add(4));
+
+        var strings = PersistentRedBlackTree.fromSorted(List.of("a", "b", "c"));
+        assertNotEquals(natural, strings);
+    }
+}
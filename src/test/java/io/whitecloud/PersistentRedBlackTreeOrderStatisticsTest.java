@@ -0,0 +1,85 @@
+package io.whitecloud;
+
+import java.util.*;
+
+import static io.whitecloud.TestUtils.EMPTY;
+import static org.junit.jupiter.api.Assertions.*;
+
+import io.whitecloud.impl.PersistentRedBlackTree;
+import org.junit.jupiter.api.Test;
+
+public class PersistentRedBlackTreeOrderStatisticsTest {
+    @Test
+    public void testEmpty() {
+        assertEquals(0, EMPTY.size());
+        assertEquals(0, EMPTY.rank(5));
+        assertThrows(IndexOutOfBoundsException.class, () -> EMPTY.get(0));
+    }
+
+    @Test
+    public void testSizeOfVersions() {
+        var one = EMPTY.add(1);
+        var two = one.add(2);
+        var deleted = two.delete(1);
+        assertEquals(1, one.size());
+        assertEquals(2, two.size());
+        assertEquals(1, deleted.size());
+        assertEquals(0, deleted.delete(2).size());
+    }
+
+    @Test
+    public void testGetAndRank() {
+        var tree = EMPTY.add(10).add(20).add(30).add(40).add(50);
+        assertEquals(10, tree.get(0));
+        assertEquals(30, tree.get(2));
+        assertEquals(50, tree.get(4));
+        assertThrows(IndexOutOfBoundsException.class, () -> tree.get(5));
+        assertThrows(IndexOutOfBoundsException.class, () -> tree.get(-1));
+
+        assertEquals(0, tree.rank(5));
+        assertEquals(0, tree.rank(10));
+        assertEquals(1, tree.rank(15));
+        assertEquals(4, tree.rank(50));
+        assertEquals(5, tree.rank(55));
+    }
+
+    @Test
+    public void testRandom() {
+        var random = new Random();
+        var expected = new TreeSet<Integer>();
+        var tree = EMPTY;
+        for (int i = 0; i < 5000; i++) {
+            int value = random.nextInt(3000);
+            if (random.nextInt(3) == 0) {
+                var next = tree.delete(value);
+                tree = next == null ? tree : next;
+                expected.remove(value);
+            } else {
+                var next = tree.add(value);
+                tree = next == null ? tree : next;
+                expected.add(value);
+            }
+            assertEquals(expected.size(), tree.size());
+        }
+
+        List<Integer> sorted = List.copyOf(expected);
+        for (int i = 0; i < sorted.size(); i++) {
+            assertEquals(sorted.get(i), tree.get(i));
+            assertEquals(i, tree.rank(sorted.get(i)));
+        }
+        for (int value = -1; value <= 3000; value++) {
+            assertEquals(expected.headSet(value).size(), tree.rank(value));
+        }
+    }
+
+    @Test
+    public void testSizeAfterBulkOperations() {
+        var first = PersistentRedBlackTree.fromSorted(List.of(1, 2, 3, 4, 5));
+        var second = PersistentRedBlackTree.fromUnsorted(List.of(4, 5, 6, 7));
+        assertEquals(5, first.size());
+        assertEquals(7, first.union(second).size());
+        assertEquals(2, first.intersection(second).size());
+        assertEquals(3, first.difference(second).size());
+        assertEquals(9, first.asTransient().add(10).add(11).add(12).add(13).add(14).delete(1).toPersistent().size());
+    }
+}
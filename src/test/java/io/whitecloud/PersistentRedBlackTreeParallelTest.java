@@ -0,0 +1,81 @@
+package io.whitecloud;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+import static io.whitecloud.TestUtils.checkOrdersOfTree;
+import static org.junit.jupiter.api.Assertions.*;
+
+import io.whitecloud.impl.ParallelSettings;
+import io.whitecloud.impl.PersistentRedBlackTree;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+
+public class PersistentRedBlackTreeParallelTest {
+    private static final ForkJoinPool POOL = new ForkJoinPool(4);
+    private static final ParallelSettings SETTINGS = new ParallelSettings(POOL, 16);
+
+    @AfterAll
+    public static void shutdown() {
+        POOL.shutdown();
+    }
+
+    @Test
+    public void testSetOperations() {
+        var random = new Random();
+        for (int round = 0; round < 20; round++) {
+            var first = randomTree(random, random.nextInt(20000));
+            var second = randomTree(random, random.nextInt(20000));
+
+            checkSame(first.union(second), first.union(second, SETTINGS));
+            checkSame(first.intersection(second), first.intersection(second, SETTINGS));
+            checkSame(first.difference(second), first.difference(second, SETTINGS));
+            checkSame(second.difference(first), second.difference(first, SETTINGS));
+        }
+    }
+
+    @Test
+    public void testBuild() {
+        for (int size : new int[] {0, 1, 2, 15, 16, 17, 1000, 12345}) {
+            List<Integer> values = IntStream.range(0, size).boxed().toList();
+            var tree = PersistentRedBlackTree.fromSorted(values, SETTINGS);
+            assertTrue(tree.checkIsRedBlackTree());
+            checkOrdersOfTree(tree, Map.of(PersistentTree.Order.InOrder, values));
+        }
+    }
+
+    @Test
+    public void testBuildRejectsUnsorted() {
+        List<Integer> values = new ArrayList<>(IntStream.range(0, 1000).boxed().toList());
+        Collections.swap(values, 500, 501);
+        assertThrows(IllegalArgumentException.class, () -> PersistentRedBlackTree.fromSorted(values, SETTINGS));
+    }
+
+    @Test
+    public void testBuildUnsorted() {
+        var random = new Random();
+        List<Integer> values = new ArrayList<>();
+        for (int i = 0; i < 50000; i++) {
+            values.add(random.nextInt(30000));
+        }
+        var tree = PersistentRedBlackTree.fromUnsorted(values, SETTINGS);
+        assertTrue(tree.checkIsRedBlackTree());
+        checkOrdersOfTree(tree, Map.of(PersistentTree.Order.InOrder, List.copyOf(new TreeSet<>(values))));
+    }
+
+    private static PersistentRedBlackTree<Integer> randomTree(Random random, int size) {
+        List<Integer> values = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            values.add(random.nextInt(40000));
+        }
+        return PersistentRedBlackTree.fromUnsorted(values);
+    }
+
+    private static void checkSame(PersistentRedBlackTree<Integer> expected, PersistentRedBlackTree<Integer> actual) {
+        assertTrue(actual.checkIsRedBlackTree());
+        List<Integer> values = new ArrayList<>();
+        expected.iterator(PersistentTree.Order.InOrder).forEachRemaining(values::add);
+        checkOrdersOfTree(actual, Map.of(PersistentTree.Order.InOrder, values));
+    }
+}
@@ -0,0 +1,95 @@
+package io.whitecloud;
+
+import java.util.*;
+
+import static io.whitecloud.TestUtils.EMPTY;
+import static io.whitecloud.TestUtils.checkOrdersOfTree;
+import static org.junit.jupiter.api.Assertions.*;
+
+import io.whitecloud.impl.PersistentRedBlackTree;
+import org.junit.jupiter.api.Test;
+
+public class PersistentRedBlackTreeRangeTest {
+    @Test
+    public void testNavigation() {
+        var tree = EMPTY.add(10).add(20).add(30);
+        assertNull(tree.floor(5));
+        assertEquals(10, tree.floor(10));
+        assertEquals(10, tree.floor(15));
+        assertEquals(10, tree.ceiling(5));
+        assertEquals(20, tree.ceiling(20));
+        assertNull(tree.ceiling(35));
+        assertEquals(30, tree.higher(20));
+        assertNull(tree.higher(30));
+        assertEquals(10, tree.lower(20));
+        assertNull(tree.lower(10));
+        assertNull(EMPTY.floor(1));
+    }
+
+    @Test
+    public void testSubSets() {
+        var tree = PersistentRedBlackTree.fromSorted(List.of(1, 2, 3, 4, 5, 6, 7, 8, 9));
+
+        checkOrdersOfTree(tree.headSet(4, false), Map.of(PersistentTree.Order.InOrder, List.of(1, 2, 3)));
+        checkOrdersOfTree(tree.headSet(4, true), Map.of(PersistentTree.Order.InOrder, List.of(1, 2, 3, 4)));
+        checkOrdersOfTree(tree.tailSet(7, false), Map.of(PersistentTree.Order.InOrder, List.of(8, 9)));
+        checkOrdersOfTree(tree.tailSet(7, true), Map.of(PersistentTree.Order.InOrder, List.of(7, 8, 9)));
+        checkOrdersOfTree(tree.subSet(3, true, 6, false), Map.of(PersistentTree.Order.InOrder, List.of(3, 4, 5)));
+        checkOrdersOfTree(tree.subSet(3, false, 6, true), Map.of(PersistentTree.Order.InOrder, List.of(4, 5, 6)));
+        checkOrdersOfTree(tree.subSet(5, false, 5, false), Map.of(PersistentTree.Order.InOrder, List.of()));
+        assertThrows(IllegalArgumentException.class, () -> tree.subSet(6, true, 3, true));
+    }
+
+    @Test
+    public void testRandomAgainstTreeSet() {
+        var random = new Random();
+        var expected = new TreeSet<Integer>();
+        for (int i = 0; i < 3000; i++) {
+            expected.add(random.nextInt(10000));
+        }
+        var tree = PersistentRedBlackTree.fromUnsorted(expected);
+
+        for (int i = 0; i < 300; i++) {
+            int from = random.nextInt(10200) - 100;
+            int to = from + random.nextInt(3000);
+            boolean fromInclusive = random.nextBoolean();
+            boolean toInclusive = random.nextBoolean();
+
+            assertEquals(expected.floor(from), tree.floor(from));
+            assertEquals(expected.ceiling(from), tree.ceiling(from));
+            assertEquals(expected.higher(from), tree.higher(from));
+            assertEquals(expected.lower(from), tree.lower(from));
+
+            var range = List.copyOf(expected.subSet(from, fromInclusive, to, toInclusive));
+            var subSet = tree.subSet(from, fromInclusive, to, toInclusive);
+            assertTrue(subSet.checkIsRedBlackTree());
+            assertEquals(range.size(), subSet.size());
+            checkOrdersOfTree(subSet, Map.of(PersistentTree.Order.InOrder, range));
+
+            List<Integer> iterated = new ArrayList<>();
+            tree.iterator(from, fromInclusive, to, toInclusive).forEachRemaining(iterated::add);
+            assertEquals(range, iterated);
+
+            var head = tree.headSet(to, toInclusive);
+            assertTrue(head.checkIsRedBlackTree());
+            checkOrdersOfTree(head, Map.of(PersistentTree.Order.InOrder, List.copyOf(expected.headSet(to, toInclusive))));
+
+            var tail = tree.tailSet(from, fromInclusive);
+            assertTrue(tail.checkIsRedBlackTree());
+            checkOrdersOfTree(tail, Map.of(PersistentTree.Order.InOrder, List.copyOf(expected.tailSet(from, fromInclusive))));
+        }
+    }
+
+    @Test
+    public void testUnboundedIterator() {
+        var tree = EMPTY.add(3).add(1).add(2);
+        List<Integer> all = new ArrayList<>();
+        tree.iterator(null, false, null, false).forEachRemaining(all::add);
+        assertEquals(List.of(1, 2, 3), all);
+
+        Iterator<Integer> iterator = tree.iterator(2, false, null, false);
+        assertEquals(3, iterator.next());
+        assertFalse(iterator.hasNext());
+        assertThrows(NoSuchElementException.class, iterator::next);
+    }
+}
@@ -0,0 +1,87 @@
+package io.whitecloud;
+
+import java.util.*;
+import java.util.function.BinaryOperator;
+
+import static io.whitecloud.TestUtils.EMPTY;
+import static io.whitecloud.TestUtils.checkOrdersOfTree;
+import static org.junit.jupiter.api.Assertions.*;
+
+import io.whitecloud.impl.PersistentRedBlackTree;
+import org.junit.jupiter.api.Test;
+
+public class PersistentRedBlackTreeSetOperationsTest {
+    @Test
+    public void testSmall() {
+        var first = EMPTY.add(1).add(2).add(3).add(4);
+        var second = EMPTY.add(3).add(4).add(5).add(6);
+
+        checkOrdersOfTree(first.union(second), Map.of(PersistentTree.Order.InOrder, List.of(1, 2, 3, 4, 5, 6)));
+        checkOrdersOfTree(first.intersection(second), Map.of(PersistentTree.Order.InOrder, List.of(3, 4)));
+        checkOrdersOfTree(first.difference(second), Map.of(PersistentTree.Order.InOrder, List.of(1, 2)));
+        checkOrdersOfTree(second.difference(first), Map.of(PersistentTree.Order.InOrder, List.of(5, 6)));
+    }
+
+    @Test
+    public void testEmpty() {
+        var tree = EMPTY.add(1).add(2);
+
+        checkOrdersOfTree(tree.union(EMPTY), Map.of(PersistentTree.Order.InOrder, List.of(1, 2)));
+        checkOrdersOfTree(EMPTY.union(tree), Map.of(PersistentTree.Order.InOrder, List.of(1, 2)));
+        checkOrdersOfTree(tree.intersection(EMPTY), Map.of(PersistentTree.Order.InOrder, List.of()));
+        checkOrdersOfTree(tree.difference(EMPTY), Map.of(PersistentTree.Order.InOrder, List.of(1, 2)));
+        checkOrdersOfTree(tree.difference(tree), Map.of(PersistentTree.Order.InOrder, List.of()));
+    }
+
+    @Test
+    public void testRandom() {
+        var random = new Random();
+        for (int round = 0; round < 50; round++) {
+            var firstValues = randomSet(random, random.nextInt(2000), 3000);
+            var secondValues = randomSet(random, random.nextInt(2000), 3000);
+            var first = PersistentRedBlackTree.fromUnsorted(firstValues);
+            var second = EMPTY;
+            for (var value : secondValues) {
+                second = second.add(value);
+            }
+            String firstShape = first.toString();
+            String secondShape = second.toString();
+
+            check(first.union(second), firstValues, secondValues, (a, b) -> { a.addAll(b); return a; });
+            check(first.intersection(second), firstValues, secondValues, (a, b) -> { a.retainAll(b); return a; });
+            check(first.difference(second), firstValues, secondValues, (a, b) -> { a.removeAll(b); return a; });
+            check(second.difference(first), secondValues, firstValues, (a, b) -> { a.removeAll(b); return a; });
+
+            assertEquals(firstShape, first.toString());
+            assertEquals(secondShape, second.toString());
+        }
+    }
+
+    @Test
+    public void testVersions() {
+        var base = PersistentRedBlackTree.fromSorted(List.of(0, 2, 4, 6, 8, 10, 12, 14, 16, 18));
+        var changed = base.add(5).delete(12).add(13);
+
+        checkOrdersOfTree(changed.difference(base), Map.of(PersistentTree.Order.InOrder, List.of(5, 13)));
+        checkOrdersOfTree(base.difference(changed), Map.of(PersistentTree.Order.InOrder, List.of(12)));
+        checkOrdersOfTree(base.union(changed), Map.of(PersistentTree.Order.InOrder,
+            List.of(0, 2, 4, 5, 6, 8, 10, 12, 13, 14, 16, 18)));
+        assertTrue(base.union(changed).checkIsRedBlackTree());
+    }
+
+    private static TreeSet<Integer> randomSet(Random random, int size, int bound) {
+        var set = new TreeSet<Integer>();
+        for (int i = 0; i < size; i++) {
+            set.add(random.nextInt(bound));
+        }
+        return set;
+    }
+
+    private static void check(PersistentRedBlackTree<Integer> result, Set<Integer> first, Set<Integer> second,
+                              BinaryOperator<TreeSet<Integer>> expected)
+    {
+        assertTrue(result.checkIsRedBlackTree());
+        var values = expected.apply(new TreeSet<>(first), new TreeSet<>(second));
+        checkOrdersOfTree(result, Map.of(PersistentTree.Order.InOrder, List.copyOf(values)));
+    }
+}
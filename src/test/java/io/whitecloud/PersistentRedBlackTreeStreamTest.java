@@ -0,0 +1,79 @@
+package io.whitecloud;
+
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import io.whitecloud.impl.PersistentRedBlackTree;
+import org.junit.jupiter.api.Test;
+
+public class PersistentRedBlackTreeStreamTest {
+    private static final PersistentRedBlackTree<Integer> TREE =
+        PersistentRedBlackTree.fromSorted(IntStream.range(0, 10_000).map(i -> 2 * i).boxed().toList());
+
+    @Test
+    public void testStream() {
+        List<Integer> expected = IntStream.range(0, 10_000).map(i -> 2 * i).boxed().toList();
+        assertEquals(expected, TREE.stream().toList());
+        assertEquals(expected, TREE.parallelStream().toList());
+        assertEquals(expected.stream().mapToLong(i -> i).sum(), TREE.parallelStream().mapToLong(i -> i).sum());
+        assertEquals(0, new PersistentRedBlackTree<Integer>().stream().count());
+        assertEquals(10_000, TREE.stream().count());
+    }
+
+    @Test
+    public void testSpliterator() {
+        var spliterator = TREE.spliterator();
+        assertTrue(spliterator.hasCharacteristics(Spliterator.SIZED | Spliterator.SUBSIZED | Spliterator.SORTED
+            | Spliterator.DISTINCT | Spliterator.IMMUTABLE));
+        assertNull(spliterator.getComparator());
+        assertEquals(10_000, spliterator.getExactSizeIfKnown());
+
+        // splitting after the traversal started keeps the elements in order
+        List<Integer> elements = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            spliterator.tryAdvance(elements::add);
+        }
+        var prefix = spliterator.trySplit();
+        assertEquals(4995, prefix.estimateSize());
+        assertEquals(4995, spliterator.estimateSize());
+        var prefixOfSuffix = spliterator.trySplit();
+        prefix.forEachRemaining(elements::add);
+        prefixOfSuffix.forEachRemaining(elements::add);
+        spliterator.forEachRemaining(elements::add);
+        assertEquals(TREE.stream().toList(), elements);
+
+        var reversed = new PersistentRedBlackTree<Integer>(Comparator.reverseOrder()).add(1).add(2);
+        assertEquals(Comparator.reverseOrder(), reversed.spliterator().getComparator());
+        assertEquals(List.of(2, 1), reversed.stream().toList());
+
+        var single = new PersistentRedBlackTree<Integer>().add(1).spliterator();
+        assertNull(single.trySplit());
+    }
+
+    @Test
+    public void testNullElements() {
+        assertTrue(TREE.spliterator().hasCharacteristics(Spliterator.NONNULL));
+        var withNull = new PersistentRedBlackTree<Integer>(Comparator.nullsFirst(Comparator.naturalOrder()))
+            .add(2).add(null).add(1);
+        assertFalse(withNull.spliterator().hasCharacteristics(Spliterator.NONNULL));
+        assertEquals(Arrays.asList(null, 1, 2), withNull.stream().toList());
+    }
+
+    @Test
+    public void testRangeStream() {
+        assertEquals(List.of(10, 12, 14), TREE.stream(10, true, 14, true, false).toList());
+        assertEquals(List.of(12), TREE.stream(10, false, 14, false, false).toList());
+        assertEquals(List.of(10, 12), TREE.stream(9, false, 13, false, true).toList());
+        assertEquals(List.of(0, 2), TREE.stream(null, false, 3, true, false).toList());
+        assertEquals(List.of(19_996, 19_998), TREE.stream(19_995, true, null, true, true).toList());
+        assertEquals(List.of(), TREE.stream(14, true, 10, true, false).toList());
+        assertEquals(List.of(), TREE.stream(10, false, 10, true, false).toList());
+        assertEquals(2500, TREE.stream(5000, true, 10_000, false, true).count());
+        assertEquals(
+            IntStream.range(1000, 5000).map(i -> 2 * i).boxed().collect(Collectors.toSet()),
+            TREE.stream(2000, true, 9999, true, true).collect(Collectors.toSet()));
+    }
+}
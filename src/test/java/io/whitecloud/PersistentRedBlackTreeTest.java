@@ -130,6 +130,31 @@ public class PersistentRedBlackTreeTest {
         ));
     }
 
+    @Test
+    public void testSingleDescent() {
+        var tree = new PersistentRedBlackTree<TestUtils.CountingInteger>();
+        for (int i = 0; i < 1000; i += 2) {
+            tree = tree.add(new TestUtils.CountingInteger(i));
+        }
+
+        for (int i = 0; i < 1000; i++) {
+            var value = new TestUtils.CountingInteger(i);
+            TestUtils.CountingInteger.comparisons = 0;
+            boolean contains = tree.contains(value);
+            int lookup = TestUtils.CountingInteger.comparisons;
+
+            TestUtils.CountingInteger.comparisons = 0;
+            var added = tree.add(value);
+            assertEquals(lookup, TestUtils.CountingInteger.comparisons);
+            assertEquals(contains, added == null);
+
+            TestUtils.CountingInteger.comparisons = 0;
+            var deleted = tree.delete(value);
+            assertEquals(lookup, TestUtils.CountingInteger.comparisons);
+            assertEquals(contains, deleted != null);
+        }
+    }
+
     @Test
     public void testRandomValues() {
         var random = new Random();
@@ -200,4 +225,56 @@ public class PersistentRedBlackTreeTest {
         List<Integer> postOrder = List.of(1, 3, 5, 7, 6, 4, 2);
         assertEquals(postOrder, list);
     }
+
+    @Test
+    public void testDescendingIteratorAndForEach() {
+        PersistentRedBlackTree<Integer> tree = EMPTY.add(1).add(2).add(3).add(4).add(5).add(6).add(7);
+
+        List<Integer> descending = new ArrayList<>();
+        tree.descendingIterator().forEachRemaining(descending::add);
+        assertEquals(List.of(7, 6, 5, 4, 3, 2, 1), descending);
+
+        List<Integer> list = new ArrayList<>();
+        tree.forEach(list::add);
+        assertEquals(List.of(1, 2, 3, 4, 5, 6, 7), list);
+
+        assertFalse(EMPTY.descendingIterator().hasNext());
+        EMPTY.forEach(el -> fail());
+    }
+
+    @Test
+    public void testIteratorsOfLargeTree() {
+        var random = new Random();
+        PersistentRedBlackTree<Integer> tree = EMPTY;
+        TreeSet<Integer> expected = new TreeSet<>();
+        for (int i = 0; i < 20_000; i++) {
+            int value = random.nextInt(10_000);
+            if (random.nextInt(3) > 0) {
+                tree = Objects.requireNonNullElse(tree.add(value), tree);
+                expected.add(value);
+            } else {
+                tree = Objects.requireNonNullElse(tree.delete(value), tree);
+                expected.remove(value);
+            }
+        }
+
+        List<Integer> inOrder = new ArrayList<>();
+        tree.iterator(PersistentTree.Order.InOrder).forEachRemaining(inOrder::add);
+        assertEquals(new ArrayList<>(expected), inOrder);
+        List<Integer> descending = new ArrayList<>();
+        tree.descendingIterator().forEachRemaining(descending::add);
+        assertEquals(new ArrayList<>(expected.descendingSet()), descending);
+        List<Integer> forEach = new ArrayList<>();
+        tree.forEach(forEach::add);
+        assertEquals(inOrder, forEach);
+
+        for (var order : List.of(PersistentTree.Order.PreOrder, PersistentTree.Order.PostOrder)) {
+            List<Integer> list = new ArrayList<>();
+            Iterator<Integer> iterator = tree.iterator(order);
+            iterator.forEachRemaining(list::add);
+            assertThrows(NoSuchElementException.class, iterator::next);
+            assertEquals(expected, new TreeSet<>(list));
+            assertEquals(expected.size(), list.size());
+        }
+    }
 }
@@ -0,0 +1,149 @@
+package io.whitecloud;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import io.whitecloud.impl.ElementCodec;
+import io.whitecloud.impl.PersistentRedBlackTree;
+import io.whitecloud.impl.TreeReader;
+import io.whitecloud.impl.TreeWriter;
+import org.junit.jupiter.api.Test;
+
+public class PersistentTreeSerializationTest {
+    private static <E> List<E> toList(PersistentRedBlackTree<E> tree) {
+        List<E> list = new ArrayList<>();
+        tree.iterator(PersistentTree.Order.InOrder).forEachRemaining(list::add);
+        return list;
+    }
+
+    private static <E> byte[] write(List<PersistentRedBlackTree<E>> versions, ElementCodec<E> codec)
+        throws IOException
+    {
+        var bytes = new ByteArrayOutputStream();
+        try (var writer = new TreeWriter<>(bytes, codec)) {
+            for (var version : versions) {
+                writer.write(version);
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    @Test
+    public void testVersionsRoundTrip() throws IOException {
+        var random = new Random();
+        List<PersistentRedBlackTree<Integer>> versions = new ArrayList<>();
+        var tree = PersistentRedBlackTree.fromUnsorted(random.ints(10_000, 0, 100_000).boxed().toList());
+        versions.add(new PersistentRedBlackTree<>());
+        for (int version = 0; version < 100; version++) {
+            for (int i = 0; i < 10; i++) {
+                int element = random.nextInt(100_000);
+                var next = random.nextBoolean() ? tree.add(element) : tree.delete(element);
+                tree = next == null ? tree : next;
+            }
+            versions.add(tree);
+        }
+
+        byte[] bytes = write(versions, ElementCodec.INTEGER);
+        byte[] last = write(List.of(tree), ElementCodec.INTEGER);
+        // a hundred versions cost little more than one of them
+        assertTrue(bytes.length < 2 * last.length, bytes.length + " vs " + last.length);
+
+        try (var reader = new TreeReader<>(new ByteArrayInputStream(bytes), ElementCodec.INTEGER)) {
+            var read = reader.readAll();
+            assertEquals(versions.size(), read.size());
+            for (int i = 0; i < versions.size(); i++) {
+                assertTrue(read.get(i).checkIsRedBlackTree());
+                assertEquals(toList(versions.get(i)), toList(read.get(i)));
+                assertEquals(versions.get(i).size(), read.get(i).size());
+            }
+            assertNull(reader.read());
+            // shared nodes are read once
+            assertTrue(reader.nodeCount() < 2 * tree.size(), String.valueOf(reader.nodeCount()));
+
+            var changed = read.get(read.size() - 1).add(-1);
+            assertTrue(changed.contains(-1));
+            assertTrue(changed.checkIsRedBlackTree());
+        }
+    }
+
+    @Test
+    public void testComparator() throws IOException {
+        var tree = new PersistentRedBlackTree<String>(String.CASE_INSENSITIVE_ORDER).add("b").add("A").add("c");
+        byte[] bytes = write(List.of(tree), ElementCodec.STRING);
+
+        try (var reader = new TreeReader<>(new ByteArrayInputStream(bytes), ElementCodec.STRING,
+            String.CASE_INSENSITIVE_ORDER))
+        {
+            var read = reader.read();
+            assertEquals(List.of("A", "b", "c"), toList(read));
+            assertTrue(read.contains("a"));
+            assertNull(read.add("C"));
+        }
+    }
+
+    @Test
+    public void testCorruptedStream() throws IOException {
+        byte[] bytes = write(List.of(new PersistentRedBlackTree<Integer>().add(1)), ElementCodec.INTEGER);
+        bytes[0] ^= 1;
+        assertThrows(StreamCorruptedException.class,
+            () -> new TreeReader<>(new ByteArrayInputStream(bytes), ElementCodec.INTEGER));
+    }
+
+    /**
+     * Stream of the given entries in the format of {@link TreeWriter}: a node is {flags, element, child references},
+     * with flags 1 for black, 2 and 4 for the left and right child; a version is {8, root reference}.
+     */
+    private static byte[] stream(int[]... entries) throws IOException {
+        var bytes = new ByteArrayOutputStream();
+        var out = new DataOutputStream(bytes);
+        out.writeInt(0x50525442);
+        out.writeByte(1);
+        for (int[] entry : entries) {
+            out.writeByte(entry[0]);
+            if (entry[0] == 8) {
+                out.writeByte(entry[1]);
+                continue;
+            }
+            out.writeInt(entry[1]);
+            for (int i = 2; i < entry.length; i++) {
+                out.writeByte(entry[i]);
+            }
+        }
+        out.writeByte(16);
+        return bytes.toByteArray();
+    }
+
+    private static void assertCorrupted(byte[] bytes) {
+        assertThrows(StreamCorruptedException.class,
+            () -> new TreeReader<>(new ByteArrayInputStream(bytes), ElementCodec.INTEGER).readAll());
+    }
+
+    @Test
+    public void testBrokenInvariants() throws IOException {
+        // valid: black 2 with red children 1 and 3
+        var valid = new TreeReader<>(new ByteArrayInputStream(stream(
+            new int[] {0, 1}, new int[] {0, 3}, new int[] {1 | 2 | 4, 2, 2, 1}, new int[] {8, 1})),
+            ElementCodec.INTEGER).readAll();
+        assertEquals(List.of(1, 2, 3), toList(valid.get(0)));
+
+        // children out of order
+        assertCorrupted(stream(new int[] {0, 3}, new int[] {0, 1}, new int[] {1 | 2 | 4, 2, 2, 1}, new int[] {8, 1}));
+        assertCorrupted(stream(new int[] {0, 5}, new int[] {1 | 2, 3, 1}, new int[] {8, 1}));
+        // same subtree on both sides
+        assertCorrupted(stream(new int[] {0, 1}, new int[] {1 | 2 | 4, 2, 1, 1}, new int[] {8, 1}));
+        // red node with a red child
+        assertCorrupted(stream(new int[] {0, 1}, new int[] {2, 2, 1}, new int[] {1 | 2, 3, 1}, new int[] {8, 1}));
+        // black heights of the children differ
+        assertCorrupted(stream(new int[] {1, 1}, new int[] {1 | 2, 2, 1}, new int[] {8, 1}));
+        // red root
+        assertCorrupted(stream(new int[] {0, 1}, new int[] {8, 1}));
+        // unknown flags
+        assertCorrupted(stream(new int[] {32, 1}, new int[] {8, 1}));
+    }
+}
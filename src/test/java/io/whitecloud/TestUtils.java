@@ -12,8 +12,8 @@ import io.whitecloud.impl.PersistentRedBlackTree;
 public class TestUtils {
     public static final PersistentRedBlackTree<Integer> EMPTY = new PersistentRedBlackTree<>();
 
-    public static <E extends Comparable<E>> void checkOrdersOfTree(PersistentRedBlackTree<E> tree,
-                                                                   Map<PersistentTree.Order, List<E>> orders)
+    public static <E> void checkOrdersOfTree(PersistentRedBlackTree<E> tree,
+                                            Map<PersistentTree.Order, List<E>> orders)
     {
         for (var entry: orders.entrySet()) {
             List<E> list = new ArrayList<>();
@@ -36,4 +36,19 @@ public class TestUtils {
             return Integer.compare(o.value, value);
         }
     }
+
+    public static class CountingInteger implements Comparable<CountingInteger> {
+        static int comparisons = 0;
+        int value;
+
+        public CountingInteger(int value) {
+            this.value = value;
+        }
+
+        @Override
+        public int compareTo(CountingInteger o) {
+            comparisons++;
+            return Integer.compare(value, o.value);
+        }
+    }
 }
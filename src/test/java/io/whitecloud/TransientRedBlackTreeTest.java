@@ -0,0 +1,99 @@
+package io.whitecloud;
+
+import java.util.*;
+
+import static io.whitecloud.TestUtils.EMPTY;
+import static io.whitecloud.TestUtils.checkOrdersOfTree;
+import static org.junit.jupiter.api.Assertions.*;
+
+import io.whitecloud.impl.PersistentRedBlackTree;
+import io.whitecloud.impl.TransientRedBlackTree;
+import org.junit.jupiter.api.Test;
+
+public class TransientRedBlackTreeTest {
+    @Test
+    public void testBatch() {
+        PersistentRedBlackTree<Integer> tree = EMPTY.asTransient()
+            .add(1).add(2).add(3).add(4).add(5).add(6).add(7)
+            .delete(4)
+            .toPersistent();
+
+        assertTrue(tree.checkIsRedBlackTree());
+        checkOrdersOfTree(tree, Map.of(PersistentTree.Order.InOrder, List.of(1, 2, 3, 5, 6, 7)));
+        assertFalse(EMPTY.contains(1));
+    }
+
+    @Test
+    public void testOriginalUntouched() {
+        PersistentRedBlackTree<Integer> base = PersistentRedBlackTree.fromUnsorted(List.of(5, 3, 8, 1, 4, 7, 9));
+        String shape = base.toString();
+
+        TransientRedBlackTree<Integer> editor = base.asTransient();
+        for (int i = 0; i < 100; i++) {
+            editor.add(i);
+        }
+        for (int i = 0; i < 100; i += 3) {
+            editor.delete(i);
+        }
+        PersistentRedBlackTree<Integer> edited = editor.toPersistent();
+
+        assertEquals(shape, base.toString());
+        assertTrue(edited.checkIsRedBlackTree());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i % 3 != 0, edited.contains(i));
+        }
+    }
+
+    @Test
+    public void testPublishedUntouched() {
+        TransientRedBlackTree<Integer> editor = EMPTY.asTransient();
+        for (int i = 0; i < 100; i++) {
+            editor.add(i);
+        }
+        PersistentRedBlackTree<Integer> first = editor.toPersistent();
+        String shape = first.toString();
+
+        for (int i = 0; i < 100; i++) {
+            editor.delete(i);
+        }
+        PersistentRedBlackTree<Integer> second = editor.toPersistent();
+
+        assertEquals(shape, first.toString());
+        assertTrue(first.checkIsRedBlackTree());
+        for (int i = 0; i < 100; i++) {
+            assertTrue(first.contains(i));
+            assertFalse(second.contains(i));
+        }
+    }
+
+    @Test
+    public void testRandomAgainstTreeSet() {
+        var random = new Random();
+        var expected = new TreeSet<Integer>();
+        var versions = new ArrayList<PersistentRedBlackTree<Integer>>();
+        var snapshots = new ArrayList<List<Integer>>();
+        TransientRedBlackTree<Integer> editor = EMPTY.asTransient();
+
+        for (int batch = 0; batch < 100; batch++) {
+            for (int i = 0; i < 200; i++) {
+                int value = random.nextInt(1000);
+                if (random.nextBoolean()) {
+                    editor.add(value);
+                    expected.add(value);
+                } else {
+                    editor.delete(value);
+                    expected.remove(value);
+                }
+                assertEquals(expected.contains(value), editor.contains(value));
+            }
+            PersistentRedBlackTree<Integer> version = editor.toPersistent();
+            assertTrue(version.checkIsRedBlackTree());
+            versions.add(version);
+            snapshots.add(List.copyOf(expected));
+        }
+
+        for (int i = 0; i < versions.size(); i++) {
+            checkOrdersOfTree(versions.get(i), Map.of(PersistentTree.Order.InOrder, snapshots.get(i)));
+        }
+    }
+}
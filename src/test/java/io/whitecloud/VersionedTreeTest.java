@@ -0,0 +1,167 @@
+package io.whitecloud;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import io.whitecloud.impl.PersistentRedBlackTree;
+import io.whitecloud.impl.RetentionPolicy;
+import io.whitecloud.impl.VersionedTree;
+import org.junit.jupiter.api.Test;
+
+public class VersionedTreeTest {
+    private static class ManualClock extends Clock {
+        private Instant instant = Instant.EPOCH;
+
+        void advance(Duration duration) {
+            instant = instant.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+
+    @Test
+    public void testVersions() {
+        var versioned = new VersionedTree<Integer>();
+        assertEquals(0, versioned.currentNumber());
+        for (int i = 1; i <= 100; i++) {
+            assertEquals(i, versioned.add(i));
+        }
+        assertEquals(100, versioned.add(1));
+        assertEquals(101, versioned.delete(1));
+        assertEquals(101, versioned.delete(1));
+
+        for (int i = 0; i <= 100; i++) {
+            assertEquals(i, versioned.version(i).size());
+            assertEquals(i > 0, versioned.version(i).contains(i));
+        }
+        assertFalse(versioned.current().contains(1));
+        assertThrows(NoSuchElementException.class, () -> versioned.version(102));
+
+        assertEquals(102, versioned.update(tree -> tree.asTransient().add(-1).add(-2).toPersistent()));
+        assertEquals(101, versioned.current().size());
+        assertEquals(102, versioned.update(tree -> tree));
+    }
+
+    @Test
+    public void testLastVersions() {
+        var versioned = new VersionedTree<>(new PersistentRedBlackTree<Integer>(), RetentionPolicy.lastVersions(10));
+        for (int i = 1; i <= 100; i++) {
+            versioned.add(i);
+            if (i == 50) {
+                versioned.tag("half");
+            }
+        }
+        List<Long> numbers = new ArrayList<>();
+        versioned.history().forEach(version -> numbers.add(version.number()));
+        assertEquals(List.of(91L, 92L, 93L, 94L, 95L, 96L, 97L, 98L, 99L, 100L), numbers);
+        assertThrows(NoSuchElementException.class, () -> versioned.version(90));
+
+        assertEquals(50, versioned.snapshot("half").size());
+        assertEquals(50, versioned.version(50).size());
+        assertEquals(Set.of("half"), versioned.tags());
+        assertTrue(versioned.untag("half"));
+        assertFalse(versioned.untag("half"));
+        assertThrows(NoSuchElementException.class, () -> versioned.version(50));
+        assertThrows(NoSuchElementException.class, () -> versioned.snapshot("half"));
+    }
+
+    @Test
+    public void testTimeWindow() {
+        var clock = new ManualClock();
+        var versioned = new VersionedTree<>(new PersistentRedBlackTree<Integer>(),
+            RetentionPolicy.within(Duration.ofMinutes(5)), clock);
+        for (int i = 1; i <= 10; i++) {
+            clock.advance(Duration.ofMinutes(1));
+            versioned.add(i);
+        }
+        List<Long> numbers = new ArrayList<>();
+        versioned.history().forEach(version -> numbers.add(version.number()));
+        assertEquals(List.of(5L, 6L, 7L, 8L, 9L, 10L), numbers);
+
+        // versions expire on reads too
+        clock.advance(Duration.ofMinutes(3));
+        numbers.clear();
+        versioned.history().forEach(version -> numbers.add(version.number()));
+        assertEquals(List.of(8L, 9L, 10L), numbers);
+        clock.advance(Duration.ofMinutes(1));
+        assertThrows(NoSuchElementException.class, () -> versioned.version(8));
+
+        // the current version is kept however old it is
+        clock.advance(Duration.ofHours(1));
+        versioned.add(10);
+        assertEquals(10, versioned.current().size());
+        assertEquals(10, versioned.retainedNodes());
+    }
+
+    @Test
+    public void testSharing() {
+        var versioned = new VersionedTree<>(PersistentRedBlackTree.fromSorted(List.of(1, 2, 3, 4, 5, 6, 7)),
+            RetentionPolicy.lastVersions(2));
+        assertEquals(new VersionedTree.NodeSharing(0, 0, 7), versioned.sharing(0));
+        assertEquals(7, versioned.retainedNodes());
+
+        versioned.add(8);
+        var sharing = versioned.sharing(1);
+        assertEquals(8, sharing.shared() + sharing.unique());
+        assertTrue(sharing.unique() >= 2 && sharing.unique() <= 4, sharing.toString());
+        assertEquals(7 + sharing.unique(), versioned.retainedNodes());
+        assertEquals(7 - sharing.shared(), versioned.sharing(0).unique());
+
+        versioned.add(9);
+        assertThrows(NoSuchElementException.class, () -> versioned.sharing(0));
+    }
+
+    @Test
+    public void testSharingMaintained() {
+        var random = new Random(7);
+        // statistics of the first history are maintained on every change, the second one counts them at the end
+        var maintained = new VersionedTree<>(new PersistentRedBlackTree<Integer>(), RetentionPolicy.lastVersions(5));
+        var counted = new VersionedTree<>(new PersistentRedBlackTree<Integer>(), RetentionPolicy.lastVersions(5));
+        maintained.retainedNodes();
+        Map<String, Long> tagged = new HashMap<>();
+        for (int i = 0; i < 2000; i++) {
+            int el = random.nextInt(500);
+            if (random.nextInt(3) > 0) {
+                maintained.add(el);
+                counted.add(el);
+            } else {
+                maintained.delete(el);
+                counted.delete(el);
+            }
+            if (i % 100 == 0) {
+                // tags are reused, so some tagged versions are released again
+                tagged.put("t" + i % 300, maintained.tag("t" + i % 300));
+                counted.tag("t" + i % 300);
+            }
+            if (i % 250 == 0) {
+                maintained.sharing(maintained.currentNumber());
+            }
+        }
+        assertEquals(counted.retainedNodes(), maintained.retainedNodes());
+        for (var version : counted.history()) {
+            assertEquals(counted.sharing(version.number()), maintained.sharing(version.number()));
+        }
+        for (long number : tagged.values()) {
+            assertEquals(counted.sharing(number), maintained.sharing(number));
+        }
+    }
+}